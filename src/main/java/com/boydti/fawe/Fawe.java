@@ -12,13 +12,16 @@ import javax.management.Notification;
 import javax.management.NotificationEmitter;
 import javax.management.NotificationListener;
 
+import com.boydti.fawe.command.Edits;
 import com.boydti.fawe.command.FixLighting;
 import com.boydti.fawe.command.Stream;
 import com.boydti.fawe.command.Wea;
 import com.boydti.fawe.command.WorldEditRegion;
 import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.DiskStorageHistory;
 import com.boydti.fawe.util.Lag;
+import com.boydti.fawe.util.MainUtil;
 import com.boydti.fawe.util.MemUtil;
 import com.boydti.fawe.util.SetQueue;
 import com.boydti.fawe.util.TaskManager;
@@ -103,6 +106,8 @@ public class Fawe {
          */
         setupConfigs();
         setupCommands();
+        // History from a previous session can't be restored to the LocalSession
+        MainUtil.deleteDirectory(new File(IMP.getDirectory(), "history"));
         
         // TODO command event - queue?
 
@@ -131,6 +136,14 @@ public class Fawe {
         // Lag
         final Lag lag = new Lag();
         TaskManager.IMP.repeat(lag, 100);
+        
+        // Delete the history of sessions which have let go of it
+        TaskManager.IMP.repeatAsync(new Runnable() {
+            @Override
+            public void run() {
+                DiskStorageHistory.deleteReleased();
+            }
+        }, 1200);
     }
     
     private void setupEvents() {
@@ -145,6 +158,7 @@ public class Fawe {
         IMP.setupCommand("fixlighting", new FixLighting());
         IMP.setupCommand("stream", new Stream());
         IMP.setupCommand("wrg", new WorldEditRegion());
+        IMP.setupCommand("edits", new Edits());
     }
     
     private void setupConfigs() {
@@ -15,6 +15,9 @@ public class FaweCache {
     
     public final static PseudoRandom RANDOM = new PseudoRandom();
     
+    private final static boolean[] CACHE_NBT = new boolean[4096];
+    private final static boolean[] CACHE_NO_DATA = new boolean[4096];
+    
     static {
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
@@ -35,5 +38,32 @@ public class FaweCache {
             CACHE_ID[i] = (short) j;
             CACHE_DATA[i] = (byte) k;
         }
+        for (final int id : new int[] { 54, 130, 142, 27, 137, 52, 154, 84, 25, 144, 138, 176, 177, 63, 119, 68, 323, 117, 116, 28, 66, 157, 61, 62, 140, 146, 149, 150, 158, 23, 123, 124, 29,
+        33, 151, 178 }) {
+            CACHE_NBT[id] = true;
+        }
+        for (final int id : new int[] { 0, 2, 4, 13, 14, 15, 20, 21, 22, 25, 30, 32, 37, 39, 40, 41, 42, 45, 46, 47, 48, 49, 51, 52, 54, 55, 56, 57, 58, 60, 61, 62, 7, 8, 9, 10, 11, 73, 74, 78, 79,
+        80, 81, 82, 83, 84, 85, 87, 88, 101, 102, 103, 110, 112, 113, 117, 121, 122, 123, 124, 129, 133, 138, 137, 140, 165, 166, 169, 170, 172, 173, 174, 176, 177, 181, 182, 188, 189, 190, 191,
+        192 }) {
+            CACHE_NO_DATA[id] = true;
+        }
+    }
+    
+    /**
+     * If a block id can have NBT / block state data
+     * @param id
+     * @return
+     */
+    public static boolean hasNBT(final int id) {
+        return (id >= 0) && (id < CACHE_NBT.length) && CACHE_NBT[id];
+    }
+    
+    /**
+     * If a block id uses its data value (i.e. blocks with the same id but different data are different blocks)
+     * @param id
+     * @return
+     */
+    public static boolean hasData(final int id) {
+        return (id < 0) || (id >= CACHE_NO_DATA.length) || !CACHE_NO_DATA[id];
     }
 }
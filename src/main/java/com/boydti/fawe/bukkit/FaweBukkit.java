@@ -28,6 +28,7 @@ import com.boydti.fawe.object.EditSessionWrapper;
 import com.boydti.fawe.object.FaweCommand;
 import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.regions.FaweMaskManager;
+import com.boydti.fawe.util.EditExecutor;
 import com.boydti.fawe.util.FaweQueue;
 import com.boydti.fawe.util.StringMan;
 import com.boydti.fawe.util.TaskManager;
@@ -54,6 +55,8 @@ public class FaweBukkit extends JavaPlugin implements IFawe {
     public void onEnable() {
         try {
             Fawe.set(this);
+            getServer().getPluginManager().registerEvents(new MaskListener(), this);
+            getServer().getPluginManager().registerEvents(new HeightMapListener(), this);
             try {
                 Class<?> clazz = Class.forName("org.spigotmc.AsyncCatcher");
                 Field field = clazz.getDeclaredField("enabled");
@@ -67,6 +70,11 @@ public class FaweBukkit extends JavaPlugin implements IFawe {
         }
     }
 
+    @Override
+    public void onDisable() {
+        EditExecutor.shutdown();
+    }
+
     @Override
     public void debug(final String s) {
         getLogger().info(ChatColor.translateAlternateColorCodes('&', s));
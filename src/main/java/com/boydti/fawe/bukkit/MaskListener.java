@@ -0,0 +1,73 @@
+package com.boydti.fawe.bukkit;
+
+import java.lang.reflect.Field;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.PluginIdentifiableCommand;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+import com.boydti.fawe.util.WEManager;
+
+/**
+ * Invalidates the cached WEManager masks<br>
+ *  - A player's mask when they leave, change world or teleport<br>
+ *  - All masks when a command of a mask plugin is run (e.g. adding a member to a region)<br>
+ */
+public class MaskListener implements Listener {
+    
+    private CommandMap commandMap;
+    
+    public MaskListener() {
+        try {
+            final Field field = Bukkit.getServer().getClass().getDeclaredField("commandMap");
+            field.setAccessible(true);
+            commandMap = (CommandMap) field.get(Bukkit.getServer());
+        } catch (final Throwable e) {
+            e.printStackTrace();
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onCommand(final PlayerCommandPreprocessEvent event) {
+        onCommand(event.getMessage().substring(1));
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onConsoleCommand(final ServerCommandEvent event) {
+        onCommand(event.getCommand());
+    }
+    
+    private void onCommand(final String message) {
+        if (commandMap == null) {
+            return;
+        }
+        final Command command = commandMap.getCommand(message.split(" ", 2)[0]);
+        if ((command instanceof PluginIdentifiableCommand) && WEManager.IMP.isMaskPlugin(((PluginIdentifiableCommand) command).getPlugin().getName())) {
+            WEManager.IMP.invalidateMasks();
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(final PlayerQuitEvent event) {
+        WEManager.IMP.invalidateMask(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(final PlayerChangedWorldEvent event) {
+        WEManager.IMP.invalidateMask(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(final PlayerTeleportEvent event) {
+        WEManager.IMP.invalidateMask(event.getPlayer().getUniqueId());
+    }
+}
@@ -20,10 +20,15 @@ public class BukkitEditSessionWrapper_0 extends EditSessionWrapper {
         }
     }
     
+    @Override
+    public boolean canFuseHistory() {
+        return hook == null;
+    }
+    
     @Override
     public Extent getHistoryExtent(Extent parent, ChangeSet set, FawePlayer<?> player) {
         if (hook != null) {
-            return hook.getLoggingExtent(parent, set, player);
+            return hook.getLoggingExtent(parent, set, player, getWorldName());
         }
         return super.getHistoryExtent(parent, set, player);
     }
@@ -1,10 +1,8 @@
 package com.boydti.fawe.bukkit.v0;
 
 import java.util.ArrayDeque;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -36,7 +34,8 @@ public abstract class BukkitQueue_0 extends FaweQueue implements Listener {
     
     private final HashMap<ChunkLoc, FaweChunk<Chunk>> toLight = new HashMap<>();
     
-    private final HashMap<String, HashSet<Long>> loaded = new HashMap<>();
+    // Loaded chunks by world, so they can be read from other threads without going through the world
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Long, Chunk>> loaded = new ConcurrentHashMap<>();
 
     public BukkitQueue_0() {
         TaskManager.IMP.task(new Runnable() {
@@ -70,13 +69,15 @@ public abstract class BukkitQueue_0 extends FaweQueue implements Listener {
         long x = chunk.getX();
         long z = chunk.getZ();
         long id = x << 32 | z & 0xFFFFFFFFL;
-        HashSet<Long> map = loaded.get(world);
-        if (map != null) {
-            map.add(id);
-        } else {
-            map = new HashSet<>(Arrays.asList(id));
-            loaded.put(world, map);
+        ConcurrentHashMap<Long, Chunk> map = loaded.get(world);
+        if (map == null) {
+            map = new ConcurrentHashMap<>();
+            final ConcurrentHashMap<Long, Chunk> previous = loaded.putIfAbsent(world, map);
+            if (previous != null) {
+                map = previous;
+            }
         }
+        map.put(id, chunk);
     }
     
     public void removeLoaded(Chunk chunk) {
@@ -84,7 +85,7 @@ public abstract class BukkitQueue_0 extends FaweQueue implements Listener {
         long x = chunk.getX();
         long z = chunk.getZ();
         long id = x << 32 | z & 0xFFFFFFFFL;
-        HashSet<Long> map = loaded.get(world);
+        ConcurrentHashMap<Long, Chunk> map = loaded.get(world);
         if (map != null) {
             map.remove(id);
         }
@@ -92,14 +93,24 @@ public abstract class BukkitQueue_0 extends FaweQueue implements Listener {
     
     @Override
     public boolean isChunkLoaded(String world, int x, int z) {
+        return getLoadedChunk(world, x, z) != null;
+    };
+    
+    /**
+     * Get a loaded chunk (safe to call from any thread, unlike World.getChunkAt)
+     * @param world
+     * @param x chunk x
+     * @param z chunk z
+     * @return the chunk, or null if it isn't loaded
+     */
+    public Chunk getLoadedChunk(String world, int x, int z) {
         long id = (long) x << 32 | z & 0xFFFFFFFFL;
-        HashSet<Long> map = loaded.get(world);
+        ConcurrentHashMap<Long, Chunk> map = loaded.get(world);
         if (map != null) {
-            return map.contains(id);
+            return map.get(id);
         }
-        return false;
-        
-    };
+        return null;
+    }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onMove(PlayerMoveEvent event) {
@@ -145,43 +156,31 @@ public abstract class BukkitQueue_0 extends FaweQueue implements Listener {
     private final ConcurrentHashMap<ChunkLoc, FaweChunk<Chunk>> blocks = new ConcurrentHashMap<>();
     
     @Override
-    public boolean setBlock(final String world, int x, final int y, int z, final short id, final byte data) {
+    public boolean setBlock(final String world, final int x, final int y, final int z, final short id, final byte data) {
         if ((y > 255) || (y < 0)) {
             return false;
         }
-        final ChunkLoc wrap = new ChunkLoc(world, x >> 4, z >> 4);
-        x = x & 15;
-        z = z & 15;
-        FaweChunk<Chunk> result = blocks.get(wrap);
-        if (result == null) {
-            result = getChunk(wrap);
-            result.setBlock(x, y, z, id, data);
-            final FaweChunk<Chunk> previous = blocks.put(wrap, result);
-            if (previous == null) {
-                return true;
-            }
-            blocks.put(wrap, previous);
-            result = previous;
-        }
-        result.setBlock(x, y, z, id, data);
+        getQueuedChunk(world, x >> 4, z >> 4).setBlock(x & 15, y, z & 15, id, data);
         return true;
     }
     
     @Override
-    public boolean setBiome(String world, int x, int z, BaseBiome biome) {
-        final ChunkLoc wrap = new ChunkLoc(world, x >> 4, z >> 4);
-        x = x & 15;
-        z = z & 15;
+    public FaweChunk<Chunk> getQueuedChunk(final String world, final int x, final int z) {
+        final ChunkLoc wrap = new ChunkLoc(world, x, z);
         FaweChunk<Chunk> result = blocks.get(wrap);
         if (result == null) {
             result = getChunk(wrap);
-            final FaweChunk<Chunk> previous = blocks.put(wrap, result);
+            final FaweChunk<Chunk> previous = blocks.putIfAbsent(wrap, result);
             if (previous != null) {
-                blocks.put(wrap, previous);
                 result = previous;
             }
         }
-        result.setBiome(x, z, biome);
+        return result;
+    }
+    
+    @Override
+    public boolean setBiome(final String world, final int x, final int z, final BaseBiome biome) {
+        getQueuedChunk(world, x >> 4, z >> 4).setBiome(x & 15, z & 15, biome);
         return true;
     }
     
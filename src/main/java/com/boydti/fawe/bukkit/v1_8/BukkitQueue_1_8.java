@@ -33,6 +33,7 @@ import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.object.ChunkLoc;
 import com.boydti.fawe.object.FaweChunk;
 import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.HeightMapCache;
 import com.boydti.fawe.object.IntegerPair;
 import com.boydti.fawe.util.MemUtil;
 import com.boydti.fawe.util.ReflectionUtils.RefClass;
@@ -358,6 +359,7 @@ public class BukkitQueue_1_8 extends BukkitQueue_0 {
                 if (newArray == null) {
                     continue;
                 }
+                HeightMapCache.update(world.getName(), fs.getChunkLoc().x, fs.getChunkLoc().z, j, newArray);
                 Object section = sections[j];
                 if ((section == null) || (fs.getCount(j) >= 4096)) {
                     section = sections[j] = newChunkSection(j << 4, flag, newArray);
@@ -436,7 +438,9 @@ public class BukkitQueue_1_8 extends BukkitQueue_0 {
             FawePlayer<Object> fp = FawePlayer.wrap(player);
             LocalSession s = fp.getSession();
             if (s != null) {
-                s.clearHistory();
+                if (!Settings.STORE_HISTORY_ON_DISK) {
+                    s.clearHistory();
+                }
                 s.setClipboard(null);
             }
             final Location loc = player.getLocation();
@@ -551,6 +555,51 @@ public class BukkitQueue_1_8 extends BukkitQueue_0 {
         return classChunkSectionConstructor.create(i, flag, ids);
     }
     
+    @Override
+    public char[] getCachedSection(final String world, final int cx, final int cy, final int cz) {
+        // Read the chunk tracked by the queue, as World.getChunkAt isn't safe off the main thread
+        final Chunk chunk = getLoadedChunk(world, cx, cz);
+        if (chunk == null) {
+            return null;
+        }
+        try {
+            final Object c = methodGetHandleChunk.of(chunk).call();
+            final Object section = ((Object[]) fieldSections.of(c).get())[cy];
+            if (section == null) {
+                return new char[4096];
+            }
+            final char[] ids = getIdArray(section);
+            final char[] copy = new char[4096];
+            System.arraycopy(ids, 0, copy, 0, 4096);
+            return copy;
+        } catch (final Throwable e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    @Override
+    public int getSectionMask(final String world, final int cx, final int cz) {
+        final Chunk chunk = getLoadedChunk(world, cx, cz);
+        if (chunk == null) {
+            return 0xFFFF;
+        }
+        try {
+            final Object c = methodGetHandleChunk.of(chunk).call();
+            final Object[] sections = (Object[]) fieldSections.of(c).get();
+            int mask = 0;
+            for (int i = 0; i < sections.length; i++) {
+                if (sections[i] != null) {
+                    mask |= 1 << i;
+                }
+            }
+            return mask;
+        } catch (final Throwable e) {
+            e.printStackTrace();
+            return 0xFFFF;
+        }
+    }
+    
     public char[] getIdArray(final Object obj) {
         return (char[]) methodGetIdArray.of(obj).call();
     }
@@ -0,0 +1,24 @@
+package com.boydti.fawe.command;
+
+import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.object.FaweCommand;
+import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.util.EditExecutor;
+
+public class Edits extends FaweCommand {
+    
+    public Edits() {
+        super("fawe.admin");
+    }
+    
+    @Override
+    public boolean execute(final FawePlayer player, final String... args) {
+        if ((player != null) && !player.hasPermission(perm)) {
+            BBC.NO_PERM.send(player, perm);
+            return false;
+        }
+        BBC.EDIT_STATS.send(player, EditExecutor.getRunning(), EditExecutor.getQueued(), EditExecutor.getPoolSize(), EditExecutor.getSubmitted(), EditExecutor.getCompleted(), EditExecutor.getFailed(),
+        EditExecutor.getAverageTime());
+        return true;
+    }
+}
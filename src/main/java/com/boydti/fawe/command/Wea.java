@@ -3,6 +3,7 @@ package com.boydti.fawe.command;
 import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.object.FaweCommand;
 import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.util.WEManager;
 
 public class Wea extends FaweCommand {
     
@@ -15,6 +16,7 @@ public class Wea extends FaweCommand {
         if (player == null) {
             return false;
         }
+        WEManager.IMP.invalidateMask(player.getUUID());
         if (toggle(player)) {
             BBC.WORLDEDIT_BYPASSED.send(player);
         } else {
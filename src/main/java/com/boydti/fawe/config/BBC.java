@@ -42,6 +42,8 @@ public enum BBC {
     WORLDEDIT_OOM("&cYour WorldEdit action was cancelled due to low memory.", "Info"),
     WORLDEDIT_OOM_ADMIN("&cPossible options:\n&8 - &7//fast\n&8 - &7Do smaller edits\n&8 - &7Allocate more memory\n&8 - &7Disable this safeguard", "Info"),
     NOT_PLAYER("&cYou must be a player to perform this action!", "Error"),
+    NO_PERM("&cYou are lacking the permission node: %s0", "Error"),
+    EDIT_STATS("&7Edits: &c%s0&7 running, &c%s1&7 queued (%s2 threads)\n&7Since startup: &c%s3&7 submitted, &c%s4&7 completed, &c%s5&7 failed, &c%s6ms&7 average", "Info"),
     OOM(
     "&8[&cCritical&8] &cDetected low memory i.e. < 1%. FAWE will take the following actions:\n&8 - &7Terminate WE block placement\n&8 - &7Clear WE history\n&8 - &7Unload non essential chunks\n&8 - &7Kill entities\n&8 - &7Garbage collect\n&cIgnore this if trying to crash server.\n&7Note: Low memory is likely (but not necessarily) caused by WE",
     "Error");
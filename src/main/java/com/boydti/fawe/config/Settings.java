@@ -21,6 +21,15 @@ public class Settings {
     public static boolean COMMAND_PROCESSOR = false;
     public static List<String> WE_BLACKLIST = Arrays.asList("cs", ".s", "restore", "snapshot", "delchunks", "listchunks");
     public static long MEM_FREE = 95;
+    public static long MASK_CACHE_TTL = 3000;
+    public static boolean STORE_HISTORY_ON_DISK = false;
+    public static int LOGGING_BUFFER = 65536;
+    public static int LOGGING_BATCH = 20000;
+    public static String LOGGING_OVERFLOW = "BLOCK";
+    public static int PARALLEL_THREADS = Runtime.getRuntime().availableProcessors();
+    public static long HEIGHTMAP_CACHE_TTL = 30000;
+    public static int EDIT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static int EDIT_PLAYER_THREADS = 1;
     
     public static void setup(final File file) {
         if (!file.exists()) {
@@ -43,6 +52,15 @@ public class Settings {
         options.put("command-processor", COMMAND_PROCESSOR);
         options.put("max-memory-percent", MEM_FREE);
         options.put("fix-all-lighting", FIX_ALL_LIGHTING);
+        options.put("mask-cache-ttl", MASK_CACHE_TTL);
+        options.put("history.use-disk", STORE_HISTORY_ON_DISK);
+        options.put("logging.buffer-size", LOGGING_BUFFER);
+        options.put("logging.batch-size", LOGGING_BATCH);
+        options.put("logging.overflow", LOGGING_OVERFLOW);
+        options.put("parallel-threads", PARALLEL_THREADS);
+        options.put("heightmap-cache-ttl", HEIGHTMAP_CACHE_TTL);
+        options.put("edit.threads", EDIT_THREADS);
+        options.put("edit.player-threads", EDIT_PLAYER_THREADS);
         
         for (final Entry<String, Object> node : options.entrySet()) {
             if (!config.contains(node.getKey())) {
@@ -58,6 +76,15 @@ public class Settings {
         MEM_FREE = config.getInt("max-memory-percent");
         REQUIRE_SELECTION = config.getBoolean("require-selection-in-mask");
         WE_BLACKLIST = config.getStringList("command-blacklist");
+        MASK_CACHE_TTL = config.getLong("mask-cache-ttl");
+        STORE_HISTORY_ON_DISK = config.getBoolean("history.use-disk");
+        LOGGING_BUFFER = config.getInt("logging.buffer-size");
+        LOGGING_BATCH = config.getInt("logging.batch-size");
+        LOGGING_OVERFLOW = config.getString("logging.overflow");
+        PARALLEL_THREADS = config.getInt("parallel-threads");
+        HEIGHTMAP_CACHE_TTL = config.getLong("heightmap-cache-ttl");
+        EDIT_THREADS = config.getInt("edit.threads");
+        EDIT_PLAYER_THREADS = config.getInt("edit.player-threads");
         
 
         try {
@@ -18,7 +18,7 @@ public class BlocksHubHook {
         this.api = hub.getApi();
     }
     
-    public Extent getLoggingExtent(Extent parent, ChangeSet set, FawePlayer<?> player) {
-        return new LoggingExtent(parent, set, (FawePlayer<Player>) player, api);
+    public Extent getLoggingExtent(Extent parent, ChangeSet set, FawePlayer<?> player, String world) {
+        return new LoggingExtent(parent, set, (FawePlayer<Player>) player, api, world);
     }
 }
@@ -0,0 +1,272 @@
+package com.boydti.fawe.logging;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.PrimeSoft.blocksHub.IBlocksHubApi;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.TaskManager;
+
+/**
+ * A bounded lock-free queue of block changes which are sent to BlocksHub in batches<br>
+ *  - Any number of edit threads can add changes<br>
+ *  - A single async task drains the queue every tick<br>
+ *  - When the queue is full, changes either wait, are dropped or are aggregated per position (see Settings.LOGGING_OVERFLOW)<br>
+ *  - Changes to a position are always logged in order: once a position is aggregated, its later changes join the aggregate<br>
+ */
+public class LogQueue {
+
+    public enum Overflow {
+        BLOCK,
+        DROP,
+        AGGREGATE;
+    }
+
+    private static LogQueue INSTANCE;
+
+    /**
+     * Get the log queue (starting it if necessary)
+     * @param api
+     * @return
+     */
+    public static synchronized LogQueue get(final IBlocksHubApi api) {
+        if (INSTANCE == null) {
+            INSTANCE = new LogQueue(api, Settings.LOGGING_BUFFER, Settings.LOGGING_BATCH);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * The player and world a change was made by / in
+     */
+    public static class Context {
+        public final String player;
+        public final World world;
+        // Position -> { from, to, queue position when aggregated }
+        private final ConcurrentHashMap<Long, long[]> aggregated = new ConcurrentHashMap<>();
+
+        public Context(final String player, final World world) {
+            this.player = player;
+            this.world = world;
+        }
+    }
+
+    private final IBlocksHubApi api;
+    private final int mask;
+    private final int batch;
+    private final Overflow overflow;
+
+    // Slot sequences: a slot can be written when sequence == position, and read when sequence == position + 1
+    private final AtomicLongArray sequences;
+    private final Context[] contexts;
+    private final int[] xs;
+    private final int[] zs;
+    private final char[] ys;
+    private final char[] from;
+    private final char[] to;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final ConcurrentHashMap<Context, Boolean> overflowed = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private LogQueue(final IBlocksHubApi api, final int size, final int batch) {
+        int capacity = 1024;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.api = api;
+        this.mask = capacity - 1;
+        this.batch = Math.max(1, batch);
+        this.overflow = parseOverflow(Settings.LOGGING_OVERFLOW);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.contexts = new Context[capacity];
+        this.xs = new int[capacity];
+        this.zs = new int[capacity];
+        this.ys = new char[capacity];
+        this.from = new char[capacity];
+        this.to = new char[capacity];
+        TaskManager.IMP.repeatAsync(new Runnable() {
+            @Override
+            public void run() {
+                if (!draining.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    drain();
+                } catch (final Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    draining.set(false);
+                }
+            }
+        }, 1);
+    }
+
+    private static Overflow parseOverflow(final String value) {
+        try {
+            return Overflow.valueOf(value.toUpperCase());
+        } catch (final Exception e) {
+            Fawe.debug("&cInvalid logging overflow: " + value + " (expected BLOCK, DROP or AGGREGATE)");
+            return Overflow.BLOCK;
+        }
+    }
+
+    /**
+     * Queue a block change to be logged
+     * @param context
+     * @param x
+     * @param y
+     * @param z
+     * @param combinedFrom (id << 4) + data
+     * @param combinedTo (id << 4) + data
+     */
+    public void add(final Context context, final int x, final int y, final int z, final int combinedFrom, final int combinedTo) {
+        final long key = ((x & 0x3FFFFFFL) << 34) | ((z & 0x3FFFFFFL) << 8) | (y & 0xFF);
+        if ((overflow == Overflow.AGGREGATE) && !context.aggregated.isEmpty() && aggregate(context, key, combinedFrom, combinedTo, false)) {
+            // Logging this ahead of the aggregate would reverse the order of the changes
+            return;
+        }
+        long wait = 10000;
+        while (!offer(context, x, y, z, combinedFrom, combinedTo)) {
+            switch (overflow) {
+                case DROP:
+                    dropped.incrementAndGet();
+                    return;
+                case AGGREGATE:
+                    aggregate(context, key, combinedFrom, combinedTo, true);
+                    return;
+                default:
+                    // Wait for the drain task to free some space, backing off up to a tick
+                    LockSupport.parkNanos(wait);
+                    wait = Math.min(wait << 1, 50000000L);
+            }
+        }
+    }
+
+    /**
+     * Merge a change into the aggregated change for its position
+     * @param context
+     * @param key
+     * @param combinedFrom
+     * @param combinedTo
+     * @param create if the position may not have been aggregated yet
+     * @return false if the position has no aggregated change and create is false
+     */
+    private boolean aggregate(final Context context, final long key, final int combinedFrom, final int combinedTo, final boolean create) {
+        while (true) {
+            final long[] previous = context.aggregated.get(key);
+            if (previous == null) {
+                if (!create) {
+                    return false;
+                }
+                if (context.aggregated.putIfAbsent(key, new long[] { combinedFrom, combinedTo, tail.get() }) == null) {
+                    break;
+                }
+            } else if (context.aggregated.replace(key, previous, new long[] { previous[0], combinedTo, previous[2] })) {
+                // Keep the original state, update the new state
+                break;
+            }
+        }
+        overflowed.put(context, Boolean.TRUE);
+        return true;
+    }
+
+    private boolean offer(final Context context, final int x, final int y, final int z, final int combinedFrom, final int combinedTo) {
+        long pos = tail.get();
+        while (true) {
+            final int index = (int) (pos & mask);
+            final long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    contexts[index] = context;
+                    xs[index] = x;
+                    zs[index] = z;
+                    ys[index] = (char) y;
+                    from[index] = (char) combinedFrom;
+                    to[index] = (char) combinedTo;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                // Full
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private void drain() {
+        final Location loc = new Location(null, 0, 0, 0);
+        for (int i = 0; i < batch; i++) {
+            final int index = (int) (head & mask);
+            if (sequences.get(index) != (head + 1)) {
+                break;
+            }
+            final Context context = contexts[index];
+            final int x = xs[index];
+            final int y = ys[index];
+            final int z = zs[index];
+            final int combinedFrom = from[index];
+            final int combinedTo = to[index];
+            contexts[index] = null;
+            sequences.set(index, head + mask + 1);
+            head++;
+            log(context, loc, x, y, z, combinedFrom, combinedTo);
+        }
+        if (overflowed.size() != 0) {
+            final Iterator<Context> iter = overflowed.keySet().iterator();
+            while (iter.hasNext()) {
+                final Context context = iter.next();
+                iter.remove();
+                final Iterator<Entry<Long, long[]>> changes = context.aggregated.entrySet().iterator();
+                while (changes.hasNext()) {
+                    final Entry<Long, long[]> entry = changes.next();
+                    final long key = entry.getKey();
+                    final long[] change = entry.getValue();
+                    if (head < change[2]) {
+                        // Changes queued before it haven't all been logged yet
+                        overflowed.put(context, Boolean.TRUE);
+                        continue;
+                    }
+                    if (!context.aggregated.remove(key, change)) {
+                        // Updated since; it will be logged next time
+                        overflowed.put(context, Boolean.TRUE);
+                        continue;
+                    }
+                    final int x = ((int) (key >> 34) << 6) >> 6;
+                    final int z = ((int) (key >> 8) << 6) >> 6;
+                    final int y = (int) (key & 0xFF);
+                    log(context, loc, x, y, z, (int) change[0], (int) change[1]);
+                }
+            }
+        }
+        final long count = dropped.getAndSet(0);
+        if (count != 0) {
+            Fawe.debug("&cBlocksHub logging fell behind; dropped " + count + " changes");
+        }
+    }
+
+    private void log(final Context context, final Location loc, final int x, final int y, final int z, final int combinedFrom, final int combinedTo) {
+        loc.setWorld(context.world);
+        loc.setX(x);
+        loc.setY(y);
+        loc.setZ(z);
+        api.logBlock(context.player, context.world, loc, combinedFrom >> 4, (byte) (combinedFrom & 15), combinedTo >> 4, (byte) (combinedTo & 15));
+    }
+}
@@ -0,0 +1,133 @@
+package com.boydti.fawe.object;
+
+/**
+ * A dense bitset over a box, indexed by ((y * length) + z) * width + x<br>
+ *  - Moving every bit one block along an axis is a shift of the whole set (by 1, width or width * length bits)<br>
+ *  - Shifts along x wrap onto the next row, so keep a 1 block border around anything which is shifted<br>
+ */
+public class BoxBitSet {
+
+    public final int width;
+    public final int height;
+    public final int length;
+    private final int size;
+    private final long[] bits;
+
+    public BoxBitSet(final int width, final int height, final int length) {
+        final long size = (long) width * height * length;
+        if (size >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Box is too large: " + width + "x" + height + "x" + length);
+        }
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.size = (int) size;
+        this.bits = new long[(this.size + 63) >> 6];
+    }
+
+    public int getIndex(final int x, final int y, final int z) {
+        return (((y * length) + z) * width) + x;
+    }
+
+    public int getX(final int index) {
+        return index % width;
+    }
+
+    public int getY(final int index) {
+        return index / (width * length);
+    }
+
+    public int getZ(final int index) {
+        return (index / width) % length;
+    }
+
+    public boolean get(final int index) {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    public void set(final int index) {
+        bits[index >> 6] |= (1L << index);
+    }
+
+    public void or(final BoxBitSet other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    public void and(final BoxBitSet other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] &= other.bits[i];
+        }
+    }
+
+    public void andNot(final BoxBitSet other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] &= ~other.bits[i];
+        }
+    }
+
+    /**
+     * Set this to the 6 face neighbours of the bits in another set (not including those bits)
+     * @param other a set with the same dimensions
+     */
+    public void setNeighbours(final BoxBitSet other) {
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = 0;
+        }
+        final int layer = width * length;
+        orShifted(other, 1);
+        orShifted(other, -1);
+        orShifted(other, width);
+        orShifted(other, -width);
+        orShifted(other, layer);
+        orShifted(other, -layer);
+    }
+
+    private void orShifted(final BoxBitSet other, final int shift) {
+        final long[] src = other.bits;
+        final int n = bits.length;
+        final int words = Math.abs(shift) >> 6;
+        final int remainder = Math.abs(shift) & 63;
+        if (shift > 0) {
+            for (int i = n - 1; i >= words; i--) {
+                long value = src[i - words] << remainder;
+                if ((remainder != 0) && ((i - words - 1) >= 0)) {
+                    value |= src[i - words - 1] >>> (64 - remainder);
+                }
+                bits[i] |= value;
+            }
+        } else {
+            for (int i = 0; i < (n - words); i++) {
+                long value = src[i + words] >>> remainder;
+                if ((remainder != 0) && ((i + words + 1) < n)) {
+                    value |= src[i + words + 1] << (64 - remainder);
+                }
+                bits[i] |= value;
+            }
+        }
+    }
+
+    /**
+     * Get the next set bit
+     * @param from the first index to check
+     * @return the index, or -1 if there are no more
+     */
+    public int nextSetBit(final int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int i = from >> 6;
+        long word = bits[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                final int index = (i << 6) + Long.numberOfTrailingZeros(word);
+                return index < size ? index : -1;
+            }
+            if (++i == bits.length) {
+                return -1;
+            }
+            word = bits[i];
+        }
+    }
+}
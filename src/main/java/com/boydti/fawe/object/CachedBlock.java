@@ -0,0 +1,18 @@
+package com.boydti.fawe.object;
+
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.blocks.BaseBlock;
+
+/**
+ * The last block read by an extent<br>
+ *  - Immutable, so it can be swapped atomically when the extent is used by multiple threads<br>
+ */
+public class CachedBlock {
+    public final BlockVector vector;
+    public final BaseBlock block;
+
+    public CachedBlock(final BlockVector vector, final BaseBlock block) {
+        this.vector = vector;
+        this.block = block;
+    }
+}
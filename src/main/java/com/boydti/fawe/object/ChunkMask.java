@@ -0,0 +1,121 @@
+package com.boydti.fawe.object;
+
+import java.util.Collection;
+
+/**
+ * A set of RegionWrapper compiled into a per chunk classification<br>
+ *  - Chunks fully inside the mask need no further checks<br>
+ *  - Chunks fully outside the mask are rejected immediately<br>
+ *  - Partial chunks store a 256 bit column mask<br>
+ *  - Classifications are cached in a fixed table of 64x64 chunks (a chunk replaces the one 64 chunks away), so no keys are boxed and the cache can't grow<br>
+ */
+public class ChunkMask {
+
+    private static final long[] INSIDE = new long[0];
+    private static final long[] OUTSIDE = new long[0];
+
+    private final RegionWrapper[] regions;
+    // Slots are only ever replaced, so a stale read just classifies the chunk again
+    private final Entry[] cache = new Entry[4096];
+
+    public ChunkMask(final Collection<RegionWrapper> regions) {
+        this.regions = regions.toArray(new RegionWrapper[regions.size()]);
+    }
+
+    /**
+     * If the column at the block coordinates is within the mask
+     * @param x
+     * @param z
+     * @return
+     */
+    public boolean contains(final int x, final int z) {
+        final long[] bits = getChunk(x >> 4, z >> 4);
+        if (bits == INSIDE) {
+            return true;
+        }
+        if (bits == OUTSIDE) {
+            return false;
+        }
+        final int index = ((z & 15) << 4) | (x & 15);
+        return (bits[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * If any column of the chunk is within the mask
+     * @param cx
+     * @param cz
+     * @return
+     */
+    public boolean intersectsChunk(final int cx, final int cz) {
+        return getChunk(cx, cz) != OUTSIDE;
+    }
+
+    /**
+     * If every column of the chunk is within the mask
+     * @param cx
+     * @param cz
+     * @return
+     */
+    public boolean containsChunk(final int cx, final int cz) {
+        return getChunk(cx, cz) == INSIDE;
+    }
+
+    private long[] getChunk(final int cx, final int cz) {
+        final int slot = ((cx & 63) << 6) | (cz & 63);
+        final Entry cached = cache[slot];
+        if ((cached != null) && (cached.cx == cx) && (cached.cz == cz)) {
+            return cached.bits;
+        }
+        final long[] bits = classify(cx, cz);
+        cache[slot] = new Entry(cx, cz, bits);
+        return bits;
+    }
+
+    private long[] classify(final int cx, final int cz) {
+        final int bx = cx << 4;
+        final int bz = cz << 4;
+        final int tx = bx + 15;
+        final int tz = bz + 15;
+        long[] bits = null;
+        for (final RegionWrapper region : regions) {
+            if ((region.maxX < bx) || (region.minX > tx) || (region.maxZ < bz) || (region.minZ > tz)) {
+                continue;
+            }
+            if ((region.minX <= bx) && (region.maxX >= tx) && (region.minZ <= bz) && (region.maxZ >= tz)) {
+                return INSIDE;
+            }
+            if (bits == null) {
+                bits = new long[4];
+            }
+            final int x1 = Math.max(region.minX, bx) & 15;
+            final int x2 = Math.min(region.maxX, tx) & 15;
+            final int z1 = Math.max(region.minZ, bz) & 15;
+            final int z2 = Math.min(region.maxZ, tz) & 15;
+            for (int z = z1; z <= z2; z++) {
+                for (int x = x1; x <= x2; x++) {
+                    final int index = (z << 4) | x;
+                    bits[index >> 6] |= 1L << (index & 63);
+                }
+            }
+        }
+        if (bits == null) {
+            return OUTSIDE;
+        }
+        if ((bits[0] == -1L) && (bits[1] == -1L) && (bits[2] == -1L) && (bits[3] == -1L)) {
+            return INSIDE;
+        }
+        return bits;
+    }
+
+    private static final class Entry {
+        private final int cx;
+        private final int cz;
+        private final long[] bits;
+
+        private Entry(final int cx, final int cz, final long[] bits) {
+            this.cx = cx;
+            this.cz = cz;
+            this.bits = bits;
+        }
+    }
+}
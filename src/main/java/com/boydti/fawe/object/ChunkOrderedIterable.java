@@ -0,0 +1,114 @@
+package com.boydti.fawe.object;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Iterates the blocks in a region one chunk at a time<br>
+ *  - Within a chunk, blocks are ordered by y, z then x (so each section is visited in one pass)<br>
+ *  - The bounds are walked lazily, so no blocks are buffered<br>
+ *  - Regions other than cuboids are filtered with Region.contains<br>
+ */
+public class ChunkOrderedIterable implements Iterable<BlockVector> {
+
+    private final Region region;
+
+    public ChunkOrderedIterable(final Region region) {
+        this.region = region;
+    }
+
+    @Override
+    public Iterator<BlockVector> iterator() {
+        return new BoundsIterator(region instanceof CuboidRegion ? null : region);
+    }
+
+    /**
+     * Walks the bounding box chunk by chunk, optionally filtering by the region
+     */
+    private class BoundsIterator implements Iterator<BlockVector> {
+        private final Region filter;
+        private final int minX, minY, minZ, maxX, maxY, maxZ;
+        private final int maxCX, maxCZ;
+        private int cx, cz;
+        private int bx, bz, tx, tz;
+        private int x, y, z;
+        private BlockVector next;
+
+        private BoundsIterator(final Region filter) {
+            this.filter = filter;
+            final Vector min = region.getMinimumPoint();
+            final Vector max = region.getMaximumPoint();
+            minX = min.getBlockX();
+            minY = min.getBlockY();
+            minZ = min.getBlockZ();
+            maxX = max.getBlockX();
+            maxY = max.getBlockY();
+            maxZ = max.getBlockZ();
+            cx = minX >> 4;
+            cz = minZ >> 4;
+            maxCX = maxX >> 4;
+            maxCZ = maxZ >> 4;
+            startChunk();
+            next = compute();
+        }
+
+        private void startChunk() {
+            bx = Math.max(minX, cx << 4);
+            bz = Math.max(minZ, cz << 4);
+            tx = Math.min(maxX, (cx << 4) + 15);
+            tz = Math.min(maxZ, (cz << 4) + 15);
+            x = bx;
+            y = minY;
+            z = bz;
+        }
+
+        private BlockVector compute() {
+            while (cz <= maxCZ) {
+                while (y <= maxY) {
+                    final BlockVector pos = new BlockVector(x, y, z);
+                    if (++x > tx) {
+                        x = bx;
+                        if (++z > tz) {
+                            z = bz;
+                            y++;
+                        }
+                    }
+                    if ((filter == null) || filter.contains(pos)) {
+                        return pos;
+                    }
+                }
+                if (++cx > maxCX) {
+                    cx = minX >> 4;
+                    cz++;
+                }
+                startChunk();
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public BlockVector next() {
+            final BlockVector current = next;
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            next = compute();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported");
+        }
+    }
+}
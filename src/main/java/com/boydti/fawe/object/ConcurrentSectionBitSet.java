@@ -0,0 +1,58 @@
+package com.boydti.fawe.object;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe version of the SectionBitSet<br>
+ *  - Tiles are AtomicLongArrays, so any number of threads can add positions at once<br>
+ *  - Callers should keep the last tile they used (see getTile) as a map lookup is comparatively slow<br>
+ */
+public class ConcurrentSectionBitSet {
+
+    private final ConcurrentHashMap<Long, AtomicLongArray> tiles = new ConcurrentHashMap<>();
+
+    /**
+     * Get (or create) the tile for a section key
+     * @param key see SectionBitSet.getKey
+     * @return
+     */
+    public AtomicLongArray getTile(final long key) {
+        AtomicLongArray tile = tiles.get(key);
+        if (tile == null) {
+            tile = new AtomicLongArray(64);
+            final AtomicLongArray previous = tiles.putIfAbsent(key, tile);
+            if (previous != null) {
+                tile = previous;
+            }
+        }
+        return tile;
+    }
+
+    public boolean add(final int x, final int y, final int z) {
+        return add(getTile(SectionBitSet.getKey(x, y, z)), x, y, z);
+    }
+
+    /**
+     * Add a position to a tile
+     * @param tile the tile containing the position
+     * @param x
+     * @param y
+     * @param z
+     * @return true if the position was not already in the set
+     */
+    public static boolean add(final AtomicLongArray tile, final int x, final int y, final int z) {
+        final int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        final int i = index >> 6;
+        final long bit = 1L << (index & 63);
+        while (true) {
+            final long value = tile.get(i);
+            if ((value & bit) != 0) {
+                return false;
+            }
+            if (tile.compareAndSet(i, value, value | bit)) {
+                return true;
+            }
+        }
+    }
+}
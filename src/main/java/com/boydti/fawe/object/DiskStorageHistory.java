@@ -0,0 +1,299 @@
+package com.boydti.fawe.object;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.boydti.fawe.Fawe;
+import com.boydti.fawe.util.EditExecutor;
+import com.boydti.fawe.util.MainUtil;
+
+/**
+ * A FaweChangeSet which moves the packed block changes to disk when the edit is flushed<br>
+ *  - Each flush is written as a compressed segment on the edit threads (see EditExecutor)<br>
+ *  - Only the segment index is kept in memory<br>
+ *  - Segments are streamed back a chunk at a time when undoing / redoing<br>
+ *  - Once the LocalSession drops a history (and it is garbage collected), its segments are deleted after its last queued write<br>
+ *  - Released histories are swept when a history is created or flushed, and every minute (see Fawe)<br>
+ *  - History does not survive a restart (LocalSession can't be given it back), so the folder is cleared on startup<br>
+ */
+public class DiskStorageHistory extends FaweChangeSet {
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    // Histories which may still have segments on disk
+    private static final ReferenceQueue<DiskStorageHistory> RELEASED = new ReferenceQueue<>();
+    private static final Set<Reference<DiskStorageHistory>> REFERENCES = Collections.newSetFromMap(new ConcurrentHashMap<Reference<DiskStorageHistory>, Boolean>());
+    // Released histories with segment writes still queued
+    private static final ArrayList<FolderReference> DEFERRED = new ArrayList<>();
+
+    private static class FolderReference extends PhantomReference<DiskStorageHistory> {
+        private final File folder;
+        private final AtomicInteger writes;
+
+        private FolderReference(final DiskStorageHistory history, final File folder, final AtomicInteger writes) {
+            super(history, RELEASED);
+            this.folder = folder;
+            this.writes = writes;
+        }
+    }
+
+    private final File folder;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    // Segment writes which are queued or running (shared with the folder reference)
+    private final AtomicInteger writes = new AtomicInteger();
+    private int storedSize;
+
+    public DiskStorageHistory(final String world, final UUID uuid) {
+        this.folder = new File(getFolder(), world + File.separator + uuid + File.separator + System.currentTimeMillis() + "_" + COUNT.incrementAndGet());
+        deleteReleased();
+        REFERENCES.add(new FolderReference(this, folder, writes));
+    }
+
+    /**
+     * Delete the segments of histories which are no longer referenced<br>
+     *  - A folder is kept until its queued segment writes have finished
+     */
+    public static synchronized void deleteReleased() {
+        Reference<? extends DiskStorageHistory> reference;
+        while ((reference = RELEASED.poll()) != null) {
+            REFERENCES.remove(reference);
+            DEFERRED.add((FolderReference) reference);
+        }
+        final Iterator<FolderReference> iter = DEFERRED.iterator();
+        while (iter.hasNext()) {
+            final FolderReference released = iter.next();
+            if (released.writes.get() != 0) {
+                continue;
+            }
+            iter.remove();
+            MainUtil.deleteDirectory(released.folder);
+            // The player's folder, if that was their last history
+            released.folder.getParentFile().delete();
+        }
+    }
+
+    /**
+     * Get the base history folder
+     * @return
+     */
+    public static File getFolder() {
+        return new File(Fawe.imp().getDirectory(), "history");
+    }
+
+    /**
+     * Move the packed block changes currently in memory to disk
+     * @param owner the player name the write is queued for, or null for the console
+     */
+    public void flush(final String owner) {
+        final Segment segment;
+        synchronized (this) {
+            final ArrayList<ChunkLog> logs = drainChunkLogs();
+            if (logs.size() == 0) {
+                return;
+            }
+            int size = 0;
+            for (final ChunkLog log : logs) {
+                size += log.size();
+            }
+            segment = new Segment(new File(folder, segments.size() + ".bd"), logs, size);
+            segments.add(segment);
+            storedSize += size;
+        }
+        final AtomicInteger writes = this.writes;
+        writes.incrementAndGet();
+        EditExecutor.submit(owner, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    segment.write();
+                } finally {
+                    writes.decrementAndGet();
+                }
+                deleteReleased();
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return super.size() + storedSize;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return super.getBlockSize() + storedSize;
+    }
+
+    @Override
+    public Iterator<ChunkLog> chunkIterator(final boolean forward) {
+        final ArrayList<Segment> order;
+        synchronized (this) {
+            order = new ArrayList<>(segments);
+        }
+        final Iterator<ChunkLog> memory = super.chunkIterator(forward);
+        if (order.size() == 0) {
+            return memory;
+        }
+        // The most recent changes must be undone first (null is the changes still in memory)
+        final ArrayList<Segment> sources = new ArrayList<>(order.size() + 1);
+        if (forward) {
+            sources.addAll(order);
+            sources.add(null);
+        } else {
+            sources.add(null);
+            for (int i = order.size() - 1; i >= 0; i--) {
+                sources.add(order.get(i));
+            }
+        }
+        final Iterator<Segment> sourceIterator = sources.iterator();
+        return new Iterator<ChunkLog>() {
+            private Iterator<ChunkLog> current;
+
+            @Override
+            public boolean hasNext() {
+                while ((current == null) || !current.hasNext()) {
+                    if (!sourceIterator.hasNext()) {
+                        return false;
+                    }
+                    final Segment segment = sourceIterator.next();
+                    current = segment == null ? memory : segment.read();
+                }
+                return true;
+            }
+
+            @Override
+            public ChunkLog next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported");
+            }
+        };
+    }
+
+    /**
+     * A single flush of packed block changes
+     */
+    private static class Segment {
+        private final File file;
+        private final int size;
+        private volatile ArrayList<ChunkLog> pending;
+
+        private Segment(final File file, final ArrayList<ChunkLog> pending, final int size) {
+            this.file = file;
+            this.pending = pending;
+            this.size = size;
+        }
+
+        private void write() {
+            final ArrayList<ChunkLog> logs = pending;
+            if (logs == null) {
+                return;
+            }
+            try {
+                file.getParentFile().mkdirs();
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+                try {
+                    out.writeInt(logs.size());
+                    for (final ChunkLog log : logs) {
+                        out.writeInt(log.x);
+                        out.writeInt(log.z);
+                        out.writeInt(log.count);
+                        out.writeInt(log.length);
+                        out.write(log.data, 0, log.length);
+                    }
+                } finally {
+                    out.close();
+                }
+                // Written; the changes no longer need to be kept in memory
+                pending = null;
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private Iterator<ChunkLog> read() {
+            final ArrayList<ChunkLog> logs = pending;
+            if (logs != null) {
+                return logs.iterator();
+            }
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+                final int count = in.readInt();
+                return new Iterator<ChunkLog>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (index < count) {
+                            return true;
+                        }
+                        close();
+                        return false;
+                    }
+
+                    @Override
+                    public ChunkLog next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        index++;
+                        try {
+                            final int x = in.readInt();
+                            final int z = in.readInt();
+                            final int changes = in.readInt();
+                            final int length = in.readInt();
+                            final byte[] data = new byte[length];
+                            in.readFully(data);
+                            return new ChunkLog(x, z, data, length, changes);
+                        } catch (final IOException e) {
+                            e.printStackTrace();
+                            index = count;
+                            close();
+                            return new ChunkLog(0, 0, new byte[0], 0, 0);
+                        }
+                    }
+
+                    private void close() {
+                        try {
+                            in.close();
+                        } catch (final IOException ignore) {}
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException("Remove is not supported");
+                    }
+                };
+            } catch (final IOException e) {
+                e.printStackTrace();
+                Fawe.debug("&cFailed to read history segment: " + file + " (" + size + " changes)");
+                return new ArrayList<ChunkLog>().iterator();
+            }
+        }
+    }
+}
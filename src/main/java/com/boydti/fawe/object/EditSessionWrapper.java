@@ -5,6 +5,7 @@ import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.blocks.BlockType;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.history.changeset.ChangeSet;
+import com.sk89q.worldedit.world.World;
 
 public class EditSessionWrapper {
     
@@ -26,7 +27,24 @@ public class EditSessionWrapper {
         return minY;
     }
     
+    /**
+     * If history can be recorded by the FusedWEExtent rather than the extent from getHistoryExtent
+     * @return
+     */
+    public boolean canFuseHistory() {
+        return true;
+    }
+    
     public Extent getHistoryExtent(Extent parent, ChangeSet set, FawePlayer<?> player) {
-        return new HistoryExtent(parent, set);
+        return new HistoryExtent(parent, set, getWorldName());
+    }
+    
+    /**
+     * Get the name of the world being edited (or null)
+     * @return
+     */
+    protected String getWorldName() {
+        final World world = session.getWorld();
+        return world != null ? world.getName() : null;
     }
 }
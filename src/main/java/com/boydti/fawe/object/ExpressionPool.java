@@ -0,0 +1,98 @@
+package com.boydti.fawe.object;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.internal.expression.Expression;
+import com.sk89q.worldedit.internal.expression.ExpressionException;
+import com.sk89q.worldedit.internal.expression.runtime.RValue;
+import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
+
+/**
+ * Copies of an expression which can be evaluated on multiple threads at once<br>
+ *  - An expression keeps its variables and environment in its tree, so each thread needs its own compiled copy<br>
+ *  - Copies are handed out with take() and returned with release(), so each thread compiles at most once<br>
+ */
+public class ExpressionPool {
+
+    /**
+     * A compiled expression with its own environment
+     */
+    public static class Instance {
+        public final Expression expression;
+        public final WorldEditExpressionEnvironment environment;
+        public final RValue[] outputs;
+
+        private Instance(final Expression expression, final WorldEditExpressionEnvironment environment, final RValue[] outputs) {
+            this.expression = expression;
+            this.environment = environment;
+            this.outputs = outputs;
+        }
+    }
+
+    private final EditSession session;
+    private final Vector unit;
+    private final Vector zero;
+    private final String expression;
+    private final String[] parameters;
+    private final String[] outputs;
+    private final ConcurrentLinkedQueue<Instance> free = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param session
+     * @param unit
+     * @param zero
+     * @param expression
+     * @param parameters the expression's parameters
+     * @param outputs the variables to read after evaluating
+     * @throws ExpressionException if the expression can't be compiled
+     */
+    public ExpressionPool(final EditSession session, final Vector unit, final Vector zero, final String expression, final String[] parameters, final String... outputs) throws ExpressionException {
+        this.session = session;
+        this.unit = unit;
+        this.zero = zero;
+        this.expression = expression;
+        this.parameters = parameters;
+        this.outputs = outputs;
+        // Compile one now, so invalid expressions fail on the calling thread
+        free.add(compile());
+    }
+
+    private Instance compile() throws ExpressionException {
+        final Expression compiled = Expression.compile(expression, parameters);
+        compiled.optimize();
+        final WorldEditExpressionEnvironment environment = new WorldEditExpressionEnvironment(session, unit, zero);
+        compiled.setEnvironment(environment);
+        final RValue[] variables = new RValue[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            variables[i] = compiled.getVariable(outputs[i], false);
+        }
+        return new Instance(compiled, environment, variables);
+    }
+
+    /**
+     * Get an instance which isn't in use by another thread
+     * @return
+     */
+    public Instance take() {
+        final Instance instance = free.poll();
+        if (instance != null) {
+            return instance;
+        }
+        try {
+            return compile();
+        } catch (final ExpressionException e) {
+            // Already compiled successfully in the constructor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return an instance once the thread is done with it
+     * @param instance
+     */
+    public void release(final Instance instance) {
+        free.add(instance);
+    }
+}
@@ -2,6 +2,7 @@ package com.boydti.fawe.object;
 
 import java.util.List;
 
+import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.util.SetQueue;
 import com.boydti.fawe.util.TaskManager;
 import com.sk89q.worldedit.BlockVector;
@@ -18,7 +19,7 @@ import com.sk89q.worldedit.util.Location;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
 
-public class FastWorldEditExtent extends AbstractDelegateExtent {
+public class FastWorldEditExtent extends AbstractDelegateExtent implements FaweExtent {
     
     private final String world;
     private final Thread thread;
@@ -50,26 +51,29 @@ public class FastWorldEditExtent extends AbstractDelegateExtent {
         }
     }
     
-    private BaseBlock lastBlock;
-    private BlockVector lastVector;
+    private volatile CachedBlock lastBlock;
 
     @Override
     public BaseBlock getLazyBlock(Vector position) {
-        if (lastBlock != null && lastVector.equals(position.toBlockVector())) {
-            return lastBlock;
+        final BlockVector vector = position.toBlockVector();
+        final CachedBlock last = lastBlock;
+        if (last != null && last.vector.equals(vector)) {
+            return last.block;
         }
+        final BaseBlock block;
         if (!SetQueue.IMP.isChunkLoaded(world, position.getBlockX() >> 4, position.getBlockZ() >> 4)) {
             try {
-                lastVector = position.toBlockVector();
-                return lastBlock = super.getBlock(position);
+                block = super.getBlock(position);
             } catch (Throwable e) {
                 return EditSession.nullBlock;
             }
+        } else {
+            synchronized (thread) {
+                block = super.getBlock(position);
+            }
         }
-        synchronized (thread) {
-            lastVector = position.toBlockVector();
-            return lastBlock = super.getBlock(position);
-        }
+        lastBlock = new CachedBlock(vector, block);
+        return block;
     }
 
     @Override
@@ -99,100 +103,18 @@ public class FastWorldEditExtent extends AbstractDelegateExtent {
     
     @Override
     public boolean setBlock(Vector location, BaseBlock block) throws WorldEditException {
-        short id = (short) block.getId();
-        int x = location.getBlockX();
-        int y = location.getBlockY();
-        int z = location.getBlockZ();
-        switch (id) {
-            case 0:
-            case 2:
-            case 4:
-            case 13:
-            case 14:
-            case 15:
-            case 20:
-            case 21:
-            case 22:
-            case 25:
-            case 30:
-            case 32:
-            case 37:
-            case 39:
-            case 40:
-            case 41:
-            case 42:
-            case 45:
-            case 46:
-            case 47:
-            case 48:
-            case 49:
-            case 51:
-            case 52:
-            case 54:
-            case 55:
-            case 56:
-            case 57:
-            case 58:
-            case 60:
-            case 61:
-            case 62:
-            case 7:
-            case 8:
-            case 9:
-            case 10:
-            case 11:
-            case 73:
-            case 74:
-            case 78:
-            case 79:
-            case 80:
-            case 81:
-            case 82:
-            case 83:
-            case 84:
-            case 85:
-            case 87:
-            case 88:
-            case 101:
-            case 102:
-            case 103:
-            case 110:
-            case 112:
-            case 113:
-            case 117:
-            case 121:
-            case 122:
-            case 123:
-            case 124:
-            case 129:
-            case 133:
-            case 138:
-            case 137:
-            case 140:
-            case 165:
-            case 166:
-            case 169:
-            case 170:
-            case 172:
-            case 173:
-            case 174:
-            case 176:
-            case 177:
-            case 181:
-            case 182:
-            case 188:
-            case 189:
-            case 190:
-            case 191:
-            case 192: {
-                SetQueue.IMP.setBlock(world, x, y, z, id);
-                return true;
-            }
-            default: {
-                SetQueue.IMP.setBlock(world, x, y, z, id, (byte) block.getData());
-                return true;
-            }
+        return setBlock(location.getBlockX(), location.getBlockY(), location.getBlockZ(), block.getId(), block.getData());
+    }
+    
+    @Override
+    public boolean setBlock(final int x, final int y, final int z, final int blockId, final int data) {
+        final short id = (short) blockId;
+        if (!FaweCache.hasData(id)) {
+            SetQueue.IMP.setBlock(world, x, y, z, id);
+        } else {
+            SetQueue.IMP.setBlock(world, x, y, z, id, (byte) data);
         }
+        return true;
     }
     
 }
@@ -1,44 +1,365 @@
 package com.boydti.fawe.object;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.history.change.BlockChange;
 import com.sk89q.worldedit.history.change.Change;
 import com.sk89q.worldedit.history.changeset.ChangeSet;
 
+/**
+ * A compact ChangeSet<br>
+ *  - Block changes are grouped by chunk and delta encoded (see ChunkLog), which is usually a single byte per change<br>
+ *  - Changes which can't be packed (NBT, entities, biomes) are stored as regular Change objects<br>
+ *  - Once a block has an unpacked change, its later changes are unpacked too, so packed changes always come first for each block<br>
+ *  - BlockChange objects are only created when iterating<br>
+ *  - Packed changes only lock the chunk they are in, so chunk tiles on different threads don't wait for each other<br>
+ */
 public class FaweChangeSet implements ChangeSet {
-    
+
     private final ArrayDeque<Change> changes = new ArrayDeque<>();
-    
+    private final ConcurrentHashMap<Long, ChunkLog> chunkMap = new ConcurrentHashMap<>();
+    private final ArrayList<ChunkLog> chunks = new ArrayList<>();
+    // Blocks which have an unpacked change (see LongQueue.pack)
+    private final Set<Long> unpacked = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private volatile ChunkLog lastChunk;
+
     @Override
     public void add(final Change change) {
         if (change.getClass() == BlockChange.class) {
             final BlockChange bc = (BlockChange) change;
-            bc.getCurrent();
-            //            BaseBlock previous = bc.getPrevious();
-            //            BlockVector pos = bc.getPosition();
-            //            int x = pos.getBlockX();
-            //            int y = pos.getBlockY();
-            //            int z = pos.getBlockZ();
-            changes.add(bc);
-        } else {
+            final BaseBlock previous = bc.getPrevious();
+            final BaseBlock current = bc.getCurrent();
+            final BlockVector pos = bc.getPosition();
+            final int y = pos.getBlockY();
+            if (!previous.hasNbtData() && !current.hasNbtData() && (y >= 0) && (y < 256) && (previous.getType() < 4096) && (current.getType() < 4096)) {
+                add(pos.getBlockX(), y, pos.getBlockZ(), (previous.getType() << 4) + previous.getData(), (current.getType() << 4) + current.getData());
+                return;
+            }
+        }
+        synchronized (this) {
+            if (change instanceof BlockChange) {
+                final BlockVector pos = ((BlockChange) change).getPosition();
+                unpacked.add(LongQueue.pack(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ()));
+            }
             changes.add(change);
         }
     }
-    
+
+    /**
+     * Add a block change without creating any objects
+     * @param x
+     * @param y (0-255)
+     * @param z
+     * @param combinedFrom (id << 4) + data
+     * @param combinedTo (id << 4) + data
+     */
+    public void add(final int x, final int y, final int z, final int combinedFrom, final int combinedTo) {
+        if (!unpacked.isEmpty() && unpacked.contains(LongQueue.pack(x, y, z))) {
+            // Keep it after the block's earlier unpacked changes
+            synchronized (this) {
+                changes.add(new BlockChange(new BlockVector(x, y, z), new BaseBlock(combinedFrom >> 4, combinedFrom & 15), new BaseBlock(combinedTo >> 4, combinedTo & 15)));
+            }
+            return;
+        }
+        final int cx = x >> 4;
+        final int cz = z >> 4;
+        ChunkLog chunk = lastChunk;
+        if ((chunk == null) || (chunk.x != cx) || (chunk.z != cz)) {
+            final long pair = (((long) cx) << 32) | (cz & 0xFFFFFFFFL);
+            chunk = chunkMap.get(pair);
+            if (chunk == null) {
+                synchronized (this) {
+                    chunk = chunkMap.get(pair);
+                    if (chunk == null) {
+                        chunk = new ChunkLog(cx, cz);
+                        chunkMap.put(pair, chunk);
+                        chunks.add(chunk);
+                    }
+                }
+            }
+            lastChunk = chunk;
+        }
+        chunk.add((char) ((y << 8) | ((z & 15) << 4) | (x & 15)), (char) combinedFrom, (char) combinedTo);
+    }
+
+    /**
+     * Get the packed block changes, grouped by chunk
+     * @return
+     */
+    public ArrayList<ChunkLog> getChunkLogs() {
+        return chunks;
+    }
+
+    /**
+     * Remove and return the packed block changes
+     * @return
+     */
+    protected synchronized ArrayList<ChunkLog> drainChunkLogs() {
+        final ArrayList<ChunkLog> drained = new ArrayList<>(chunks);
+        chunks.clear();
+        chunkMap.clear();
+        lastChunk = null;
+        return drained;
+    }
+
+    /**
+     * Get an iterator over the packed block changes<br>
+     *  - The order of chunks only matters if a chunk can appear more than once
+     * @param forward
+     * @return
+     */
+    public Iterator<ChunkLog> chunkIterator(final boolean forward) {
+        if (forward) {
+            return chunks.iterator();
+        }
+        final ListIterator<ChunkLog> iter = chunks.listIterator(chunks.size());
+        return new Iterator<ChunkLog>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasPrevious();
+            }
+
+            @Override
+            public ChunkLog next() {
+                return iter.previous();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Remove is not supported");
+            }
+        };
+    }
+
+    /**
+     * Get the number of block changes (packed or not), i.e. the size without entity and biome changes
+     * @return
+     */
+    public synchronized int getBlockSize() {
+        int size = 0;
+        for (final ChunkLog chunk : chunks) {
+            size += chunk.size();
+        }
+        for (final Change change : changes) {
+            if (change instanceof BlockChange) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the changes which could not be packed
+     * @return
+     */
+    public ArrayDeque<Change> getOtherChanges() {
+        return changes;
+    }
+
     @Override
     public Iterator<Change> backwardIterator() {
-        return changes.descendingIterator();
+        return new BlockIterator(chunkIterator(false), false);
     }
-    
+
     @Override
     public Iterator<Change> forwardIterator() {
-        return changes.iterator();
+        return new BlockIterator(chunkIterator(true), true);
     }
-    
+
     @Override
-    public int size() {
-        return changes.size();
+    public synchronized int size() {
+        int size = changes.size();
+        for (final ChunkLog chunk : chunks) {
+            size += chunk.size();
+        }
+        return size;
+    }
+
+    /**
+     * The block changes for a single chunk<br>
+     *  - Each change starts with a header byte: bits 0-5 are the position delta (1-63, or 0 if the position follows as 2 bytes)<br>
+     *  - Bit 6 / 7 are set if the previous / new combined id is the same as the last change's, otherwise it follows as 2 bytes<br>
+     *  - Positions are the local index (y << 8) | (z << 4) | x, so changes made in x, z, y order take one byte each<br>
+     */
+    public static class ChunkLog {
+        public final int x;
+        public final int z;
+        byte[] data;
+        int length;
+        int count;
+        // The last change added, which the next is encoded against
+        private int lastPos;
+        private int lastFrom;
+        private int lastTo;
+
+        ChunkLog(final int x, final int z) {
+            this(x, z, new byte[32], 0, 0);
+        }
+
+        ChunkLog(final int x, final int z, final byte[] data, final int length, final int count) {
+            this.x = x;
+            this.z = z;
+            this.data = data;
+            this.length = length;
+            this.count = count;
+        }
+
+        private synchronized void add(final char pos, final char from, final char to) {
+            if ((length + 7) > data.length) {
+                final byte[] tmp = new byte[data.length << 1];
+                System.arraycopy(data, 0, tmp, 0, length);
+                data = tmp;
+            }
+            final int delta = pos - lastPos;
+            int header = ((delta > 0) && (delta < 64)) ? delta : 0;
+            if (from == lastFrom) {
+                header |= 64;
+            }
+            if (to == lastTo) {
+                header |= 128;
+            }
+            data[length++] = (byte) header;
+            if ((header & 63) == 0) {
+                data[length++] = (byte) (pos >> 8);
+                data[length++] = (byte) pos;
+            }
+            if ((header & 64) == 0) {
+                data[length++] = (byte) (from >> 8);
+                data[length++] = (byte) from;
+            }
+            if ((header & 128) == 0) {
+                data[length++] = (byte) (to >> 8);
+                data[length++] = (byte) to;
+            }
+            lastPos = pos;
+            lastFrom = from;
+            lastTo = to;
+            count++;
+        }
+
+        /**
+         * The number of changes in this chunk
+         * @return
+         */
+        public synchronized int size() {
+            return count;
+        }
+
+        /**
+         * Decode the changes in this chunk
+         * @return 3 chars per change: local position (y << 8) | (z << 4) | x, previous combined id, new combined id
+         */
+        public synchronized char[] decode() {
+            final char[] changes = new char[count * 3];
+            int pos = 0;
+            int from = 0;
+            int to = 0;
+            int j = 0;
+            for (int i = 0; i < length;) {
+                final int header = data[i++] & 0xFF;
+                if ((header & 63) != 0) {
+                    pos += header & 63;
+                } else {
+                    pos = ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+                    i += 2;
+                }
+                if ((header & 64) == 0) {
+                    from = ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+                    i += 2;
+                }
+                if ((header & 128) == 0) {
+                    to = ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+                    i += 2;
+                }
+                changes[j++] = (char) pos;
+                changes[j++] = (char) from;
+                changes[j++] = (char) to;
+            }
+            return changes;
+        }
+
+        private BlockChange getChange(final char[] changes, final int i) {
+            final int index = i * 3;
+            final int pos = changes[index];
+            final int from = changes[index + 1];
+            final int to = changes[index + 2];
+            final BlockVector vector = new BlockVector((x << 4) + (pos & 15), pos >> 8, (z << 4) + ((pos >> 4) & 15));
+            return new BlockChange(vector, new BaseBlock(from >> 4, from & 15), new BaseBlock(to >> 4, to & 15));
+        }
+    }
+
+    /**
+     * Iterate the block changes, then the other changes (or the reverse)<br>
+     *  - This keeps the order of each block's changes, as its packed changes come before its unpacked ones
+     */
+    private class BlockIterator implements Iterator<Change> {
+        private final boolean forward;
+        private final Iterator<Change> other;
+        private final Iterator<ChunkLog> chunkIterator;
+        private int index;
+        private ChunkLog current;
+        // The decoded changes of the current chunk
+        private char[] decoded;
+
+        private BlockIterator(final Iterator<ChunkLog> chunkIterator, final boolean forward) {
+            this.forward = forward;
+            this.other = forward ? changes.iterator() : changes.descendingIterator();
+            this.chunkIterator = chunkIterator;
+            nextChunk();
+        }
+
+        private void nextChunk() {
+            while (true) {
+                if (!chunkIterator.hasNext()) {
+                    current = null;
+                    decoded = null;
+                    return;
+                }
+                current = chunkIterator.next();
+                if (current.size() > 0) {
+                    decoded = current.decode();
+                    index = forward ? 0 : (decoded.length / 3) - 1;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (current != null) || other.hasNext();
+        }
+
+        @Override
+        public Change next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (forward ? (current == null) : other.hasNext()) {
+                return other.next();
+            }
+            final Change change = current.getChange(decoded, index);
+            if (forward) {
+                if (++index >= (decoded.length / 3)) {
+                    nextChunk();
+                }
+            } else if (--index < 0) {
+                nextChunk();
+            }
+            return change;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove is not supported");
+        }
     }
 }
@@ -0,0 +1,91 @@
+package com.boydti.fawe.object;
+
+import java.util.Iterator;
+
+import com.boydti.fawe.object.FaweChangeSet.ChunkLog;
+import com.boydti.fawe.util.FaweQueue;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.history.UndoContext;
+import com.sk89q.worldedit.history.change.Change;
+
+/**
+ * Undo / redo a FaweChangeSet a chunk at a time<br>
+ *  - Packed block changes are written directly to the queued FaweChunk<br>
+ *  - Other changes (entities, NBT) are applied to the context extent<br>
+ */
+public class FaweChangeSetExecutor implements Operation {
+    
+    private final FaweChangeSet changeSet;
+    private final boolean undo;
+    private final UndoContext context;
+    private final String world;
+    private final ChunkMask mask;
+    
+    /**
+     * @param changeSet
+     * @param undo
+     * @param context
+     * @param world
+     * @param mask the area which can be changed (or null for no restriction)
+     */
+    public FaweChangeSetExecutor(final FaweChangeSet changeSet, final boolean undo, final UndoContext context, final String world, final ChunkMask mask) {
+        this.changeSet = changeSet;
+        this.undo = undo;
+        this.context = context;
+        this.world = world;
+        this.mask = mask;
+    }
+    
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        if (undo) {
+            final Iterator<Change> iter = changeSet.getOtherChanges().descendingIterator();
+            while (iter.hasNext()) {
+                iter.next().undo(context);
+            }
+        }
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final Iterator<ChunkLog> iter = changeSet.chunkIterator(!undo);
+        while (iter.hasNext()) {
+            final ChunkLog log = iter.next();
+            if ((mask != null) && !mask.intersectsChunk(log.x, log.z)) {
+                continue;
+            }
+            final boolean full = (mask == null) || mask.containsChunk(log.x, log.z);
+            final int bx = log.x << 4;
+            final int bz = log.z << 4;
+            final char[] changes = log.decode();
+            final int size = changes.length / 3;
+            FaweChunk<?> chunk = null;
+            // Undo in reverse order so the oldest state of each block is the one kept
+            for (int n = 0; n < size; n++) {
+                final int i = (undo ? size - 1 - n : n) * 3;
+                final int pos = changes[i];
+                final int x = pos & 15;
+                final int z = (pos >> 4) & 15;
+                if (!full && !mask.contains(bx + x, bz + z)) {
+                    continue;
+                }
+                if (chunk == null) {
+                    SetQueue.IMP.setWaiting();
+                    chunk = queue.getQueuedChunk(world, log.x, log.z);
+                }
+                final int combined = undo ? changes[i + 1] : changes[i + 2];
+                chunk.setBlock(x, pos >> 8, z, combined >> 4, (byte) (combined & 15));
+            }
+        }
+        if (!undo) {
+            final Iterator<Change> others = changeSet.getOtherChanges().iterator();
+            while (others.hasNext()) {
+                others.next().redo(context);
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void cancel() {}
+}
@@ -0,0 +1,19 @@
+package com.boydti.fawe.object;
+
+/**
+ * An extent which can set blocks by their coordinates and id without any objects being created<br>
+ *  - Used by operations which rasterize many blocks of a single type (e.g. spheres and cylinders)<br>
+ *  - Implementations apply the same limits, masks and history as their regular setBlock<br>
+ */
+public interface FaweExtent {
+    /**
+     * Set a block (which has no NBT)
+     * @param x
+     * @param y
+     * @param z
+     * @param id
+     * @param data
+     * @return true if the block was set
+     */
+    boolean setBlock(final int x, final int y, final int z, final int id, final int data);
+}
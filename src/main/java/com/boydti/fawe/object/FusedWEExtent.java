@@ -0,0 +1,276 @@
+package com.boydti.fawe.object;
+
+import java.util.HashSet;
+import java.util.List;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.MainUtil;
+import com.boydti.fawe.util.MemUtil;
+import com.boydti.fawe.util.Perm;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.Vector2D;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extent.AbstractDelegateExtent;
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.history.change.BlockChange;
+import com.sk89q.worldedit.history.change.EntityCreate;
+import com.sk89q.worldedit.history.changeset.ChangeSet;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.Location;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.biome.BaseBiome;
+
+/**
+ * Performs the work of the ProcessedWEExtent, SafeExtentWrapper, HistoryExtent and MaskingExtent in a single stage<br>
+ *  - Limits, region mask, history capture and queue insertion happen in one method<br>
+ *  - Previous blocks are read from section copies (see SectionSnapshots), so no world access or locking is needed per block<br>
+ *  - The coordinate setBlock only creates a Vector for the WorldEdit mask, or to read a block with NBT<br>
+ *  - Blocks are not reordered (the EditSession's MultiStageReorder is created disabled, so nothing is lost)<br>
+ *  - Only used by the EditSession when no third party extent has been registered<br>
+ */
+public class FusedWEExtent extends ProcessedWEExtent implements FaweExtent {
+
+    private final ChangeSet changeSet;
+    private final FaweChangeSet faweChangeSet;
+    private final Extent bypassHistory;
+    private final SectionSnapshots snapshots;
+    private Mask weMask;
+    private volatile boolean cancelled;
+
+    public FusedWEExtent(final World world, final Thread thread, final FawePlayer<?> player, final HashSet<RegionWrapper> mask, final int max, final ChangeSet changeSet) {
+        super(world, thread, player, mask, max);
+        this.changeSet = changeSet;
+        this.faweChangeSet = changeSet instanceof FaweChangeSet ? (FaweChangeSet) changeSet : null;
+        this.bypassHistory = new HistoryBypass();
+        this.snapshots = new SectionSnapshots(this.world);
+    }
+
+    /**
+     * Drop the section copies used to read previous blocks (once the edit's changes have been flushed)
+     */
+    public void clearSnapshots() {
+        snapshots.clear();
+    }
+
+    /**
+     * Get a block as this edit has left it so far, without locking the main thread
+     * @param x
+     * @param y
+     * @param z
+     * @return the combined id (id << 4) + data, or -1 if the block must be read from the world
+     */
+    public int getSnapshot(final int x, final int y, final int z) {
+        return snapshots.get(x, y, z);
+    }
+
+    /**
+     * Get a view of this extent which does not record history
+     * @return
+     */
+    public Extent bypassHistory() {
+        return bypassHistory;
+    }
+
+    /**
+     * Set the WorldEdit mask (or null for no mask)
+     * @param mask
+     */
+    public void setMask(final Mask mask) {
+        this.weMask = mask;
+    }
+
+    public Mask getMask() {
+        return weMask;
+    }
+
+    /**
+     * Cancel the edit. All further changes will be ignored.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public Entity createEntity(final Location location, final BaseEntity entity) {
+        if (cancelled) {
+            return null;
+        }
+        final Entity created = super.createEntity(location, entity);
+        if (entity != null) {
+            changeSet.add(new EntityCreate(location, entity, created));
+        }
+        return created;
+    }
+
+    @Override
+    public List<? extends Entity> getEntities() {
+        return HistoryExtent.wrapEntities(super.getEntities(), changeSet);
+    }
+
+    @Override
+    public List<? extends Entity> getEntities(final Region region) {
+        return HistoryExtent.wrapEntities(super.getEntities(region), changeSet);
+    }
+
+    @Override
+    public boolean setBiome(final Vector2D position, final BaseBiome biome) {
+        if (cancelled) {
+            return false;
+        }
+        return super.setBiome(position, biome);
+    }
+
+    @Override
+    public boolean setBlock(final Vector location, final BaseBlock block) throws WorldEditException {
+        return setBlock(location, block, true);
+    }
+
+    /**
+     * Set a block, optionally recording the change
+     * @param location
+     * @param block
+     * @param history
+     * @return
+     */
+    public boolean setBlock(final Vector location, final BaseBlock block, final boolean history) {
+        return setBlock(location.getBlockX(), location.getBlockY(), location.getBlockZ(), location, block, (short) block.getType(), (byte) block.getData(), history);
+    }
+
+    @Override
+    public boolean setBlock(final int x, final int y, final int z, final int id, final int data) {
+        return setBlock(x, y, z, null, null, (short) id, (byte) data, true);
+    }
+
+    /**
+     * Set a block
+     * @param x
+     * @param y
+     * @param z
+     * @param location the position (or null to create it only if needed)
+     * @param block the block (or null if it has no NBT)
+     * @param id
+     * @param data
+     * @param history
+     * @return
+     */
+    private boolean setBlock(final int x, final int y, final int z, Vector location, final BaseBlock block, final short id, byte data, final boolean history) {
+        if (cancelled) {
+            return false;
+        }
+        if ((y > 255) || (y < 0) || !chunkMask.contains(x, z)) {
+            return false;
+        }
+        if (weMask != null) {
+            if (location == null) {
+                location = new Vector(x, y, z);
+            }
+            if (!weMask.test(location)) {
+                return false;
+            }
+        }
+        if (FaweCache.hasNBT(id)) {
+            if (BSblocked) {
+                return false;
+            }
+            if (BScount.incrementAndGet() == (Settings.MAX_BLOCKSTATES + 1)) {
+                BSblocked = true;
+                MainUtil.sendAdmin(BBC.WORLDEDIT_DANGEROUS_WORLDEDIT.format(world + ": " + x + "," + y + "," + z, user));
+            }
+        }
+        final boolean hasData = FaweCache.hasData(id);
+        if (!hasData) {
+            data = 0;
+        }
+        if (count.getAndIncrement() > max) {
+            cancel();
+            return false;
+        }
+        final int combined = (id << 4) + data;
+        boolean changed = true;
+        if (history) {
+            // Read the previous block from the section copy (it has this edit's own changes, unlike the world)
+            final int previous = snapshots.get(x, y, z);
+            if (previous != -1) {
+                changed = ((previous >> 4) != id) || (hasData && ((previous & 15) != data));
+                if (changed) {
+                    if ((faweChangeSet != null) && ((block == null) || !block.hasNbtData())) {
+                        faweChangeSet.add(x, y, z, previous, combined);
+                    } else {
+                        final BlockVector position = location != null ? location.toBlockVector() : new BlockVector(x, y, z);
+                        changeSet.add(new BlockChange(position, new BaseBlock(previous >> 4, previous & 15), block != null ? block : new BaseBlock(id, data)));
+                    }
+                }
+            } else {
+                // The block has NBT (or its section can't be read)
+                if (location == null) {
+                    location = new Vector(x, y, z);
+                }
+                final BaseBlock previousBlock = getLazyBlock(location);
+                changed = (previousBlock.getType() != id) || (hasData && (previousBlock.getData() != data));
+                if (changed) {
+                    if ((faweChangeSet != null) && ((block == null) || !block.hasNbtData()) && !previousBlock.hasNbtData()) {
+                        faweChangeSet.add(x, y, z, (previousBlock.getType() << 4) + previousBlock.getData(), combined);
+                    } else {
+                        changeSet.add(new BlockChange(location.toBlockVector(), previousBlock, block != null ? block : new BaseBlock(id, data)));
+                    }
+                }
+            }
+        }
+        // The world may be behind the queue, so the block is still set even if it looks unchanged
+        snapshots.set(x, y, z, combined);
+        SetQueue.IMP.setBlock(world, x, y, z, id, data);
+        if (MemUtil.isMemoryLimited()) {
+            if (user != null) {
+                BBC.WORLDEDIT_OOM.send(user);
+                if (Perm.hasPermission(user, "worldedit.fast")) {
+                    BBC.WORLDEDIT_OOM_ADMIN.send(user);
+                }
+            }
+            cancel();
+            return false;
+        }
+        return changed;
+    }
+
+    private class HistoryBypass extends AbstractDelegateExtent {
+
+        private HistoryBypass() {
+            super(FusedWEExtent.this);
+        }
+
+        @Override
+        public boolean setBlock(final Vector location, final BaseBlock block) throws WorldEditException {
+            return FusedWEExtent.this.setBlock(location, block, false);
+        }
+
+        @Override
+        public Entity createEntity(final Location location, final BaseEntity entity) {
+            if (cancelled) {
+                return null;
+            }
+            return FusedWEExtent.super.createEntity(location, entity);
+        }
+
+        @Override
+        public List<? extends Entity> getEntities() {
+            return FusedWEExtent.super.getEntities();
+        }
+
+        @Override
+        public List<? extends Entity> getEntities(final Region region) {
+            return FusedWEExtent.super.getEntities(region);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.boydti.fawe.object;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.blocks.BlockType;
+
+/**
+ * A per world cache of which blocks in each column are terrain / solid<br>
+ *  - Each column is stored as two 256 bit sets, so the highest block in any y range is found without a scan<br>
+ *  - Chunks are read from the queue's section snapshots and are safe to query from any thread<br>
+ *  - FAWE's own edits update cached chunks as they are applied; other changes invalidate the chunk (see HeightMapListener)<br>
+ *  - Entries still expire after Settings.HEIGHTMAP_CACHE_TTL, for changes which fire no event<br>
+ *  - The least recently used chunks are evicted once MAX_CHUNKS are cached<br>
+ */
+public class HeightMapCache {
+
+    private static final ConcurrentHashMap<String, HeightMapCache> WORLDS = new ConcurrentHashMap<>();
+    private static final int MAX_CHUNKS = 1024;
+
+    private static boolean[] NATURAL;
+    private static boolean[] SOLID;
+
+    /**
+     * Get the cache for a world
+     * @param world
+     * @return
+     */
+    public static HeightMapCache get(final String world) {
+        HeightMapCache cache = WORLDS.get(world);
+        if (cache == null) {
+            cache = new HeightMapCache(world);
+            final HeightMapCache previous = WORLDS.putIfAbsent(world, cache);
+            if (previous != null) {
+                cache = previous;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Update a cached chunk with a section which is being applied
+     * @param world
+     * @param cx
+     * @param cz
+     * @param cy
+     * @param ids queued ids (0 = unchanged, 1 = air, otherwise (id << 4) + data)
+     */
+    public static void update(final String world, final int cx, final int cz, final int cy, final char[] ids) {
+        final HeightMapCache cache = WORLDS.get(world);
+        if (cache == null) {
+            return;
+        }
+        final ChunkHeights chunk;
+        synchronized (cache.chunks) {
+            chunk = cache.chunks.get(getKey(cx, cz));
+        }
+        if (chunk == null) {
+            return;
+        }
+        final boolean[] natural = NATURAL;
+        final boolean[] solid = SOLID;
+        for (int k = 0; k < 4096; k++) {
+            final char combined = ids[k];
+            if (combined == 0) {
+                continue;
+            }
+            final int x = FaweCache.CACHE_X[cy][k];
+            final int y = FaweCache.CACHE_Y[cy][k];
+            final int z = FaweCache.CACHE_Z[cy][k];
+            final int id = combined == 1 ? 0 : combined;
+            chunk.set(chunk.natural, x, y, z, natural[id]);
+            chunk.set(chunk.solid, x, y, z, solid[id]);
+        }
+    }
+
+    /**
+     * Drop a cached chunk which was changed outside of FAWE (it will be read again when next used)
+     * @param world
+     * @param cx
+     * @param cz
+     */
+    public static void invalidate(final String world, final int cx, final int cz) {
+        final HeightMapCache cache = WORLDS.get(world);
+        if (cache == null) {
+            return;
+        }
+        synchronized (cache.chunks) {
+            cache.chunks.remove(getKey(cx, cz));
+        }
+    }
+
+    private static long getKey(final int cx, final int cz) {
+        return (((long) cx) << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private static synchronized void init() {
+        if (NATURAL != null) {
+            return;
+        }
+        final boolean[] natural = new boolean[65536];
+        final boolean[] solid = new boolean[65536];
+        for (int i = 0; i < 65536; i++) {
+            final int id = i >> 4;
+            final int data = i & 15;
+            natural[i] = BlockType.isNaturalTerrainBlock(id, data);
+            solid[i] = !BlockType.canPassThrough(id, data);
+        }
+        SOLID = solid;
+        NATURAL = natural;
+    }
+
+    private final String world;
+    // Access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<Long, ChunkHeights> chunks = new LinkedHashMap<Long, ChunkHeights>(MAX_CHUNKS, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, ChunkHeights> eldest) {
+            return size() > MAX_CHUNKS;
+        }
+    };
+
+    private HeightMapCache(final String world) {
+        this.world = world;
+        init();
+    }
+
+    /**
+     * Returns the highest solid 'terrain' block
+     * @param x
+     * @param z
+     * @param minY
+     * @param maxY
+     * @param naturalOnly look at natural blocks or all (non passable) blocks
+     * @return the height, minY if none was found, or Integer.MIN_VALUE if the chunk can't be read
+     */
+    public int getHighestTerrainBlock(final int x, final int z, int minY, int maxY, final boolean naturalOnly) {
+        final ChunkHeights chunk = getChunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return Integer.MIN_VALUE;
+        }
+        final int min = minY;
+        minY = Math.max(0, minY);
+        maxY = Math.min(255, maxY);
+        if (maxY < minY) {
+            return min;
+        }
+        final AtomicLongArray bits = naturalOnly ? chunk.natural : chunk.solid;
+        final int index = (((z & 15) << 4) | (x & 15)) << 2;
+        final int minWord = minY >> 6;
+        for (int w = maxY >> 6; w >= minWord; w--) {
+            long value = bits.get(index + w);
+            if (w == (maxY >> 6)) {
+                final int shift = (maxY & 63) + 1;
+                if (shift < 64) {
+                    value &= (1L << shift) - 1;
+                }
+            }
+            if (value != 0) {
+                final int y = (w << 6) + (63 - Long.numberOfLeadingZeros(value));
+                return y >= minY ? y : min;
+            }
+        }
+        return min;
+    }
+
+    private ChunkHeights getChunk(final int cx, final int cz) {
+        final long key = getKey(cx, cz);
+        final ChunkHeights cached;
+        synchronized (chunks) {
+            cached = chunks.get(key);
+        }
+        final long now = System.currentTimeMillis();
+        if ((cached != null) && ((now - cached.time) < Settings.HEIGHTMAP_CACHE_TTL)) {
+            return cached;
+        }
+        if (!SetQueue.IMP.queue.isChunkLoaded(world, cx, cz)) {
+            return null;
+        }
+        final int mask = SetQueue.IMP.queue.getSectionMask(world, cx, cz);
+        final ChunkHeights chunk = new ChunkHeights(now);
+        final boolean[] natural = NATURAL;
+        final boolean[] solid = SOLID;
+        for (int cy = 0; cy < 16; cy++) {
+            if (((mask >> cy) & 1) == 0) {
+                continue;
+            }
+            final char[] ids = SetQueue.IMP.queue.getCachedSection(world, cx, cy, cz);
+            if (ids == null) {
+                return null;
+            }
+            for (int k = 0; k < 4096; k++) {
+                final char combined = ids[k];
+                if (combined == 0) {
+                    continue;
+                }
+                final int x = FaweCache.CACHE_X[cy][k];
+                final int y = FaweCache.CACHE_Y[cy][k];
+                final int z = FaweCache.CACHE_Z[cy][k];
+                if (natural[combined]) {
+                    chunk.set(chunk.natural, x, y, z, true);
+                }
+                if (solid[combined]) {
+                    chunk.set(chunk.solid, x, y, z, true);
+                }
+            }
+        }
+        synchronized (chunks) {
+            chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    private static class ChunkHeights {
+        private final long time;
+        // 4 longs per column, indexed by ((z << 4) | x) << 2
+        private final AtomicLongArray natural = new AtomicLongArray(1024);
+        private final AtomicLongArray solid = new AtomicLongArray(1024);
+
+        private ChunkHeights(final long time) {
+            this.time = time;
+        }
+
+        private void set(final AtomicLongArray bits, final int x, final int y, final int z, final boolean value) {
+            final int i = ((((z << 4) | x)) << 2) + (y >> 6);
+            final long bit = 1L << (y & 63);
+            while (true) {
+                final long current = bits.get(i);
+                final long updated = value ? (current | bit) : (current & ~bit);
+                if ((current == updated) || bits.compareAndSet(i, current, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+}
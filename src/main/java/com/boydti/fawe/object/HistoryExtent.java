@@ -7,6 +7,7 @@ import java.util.List;
 
 import javax.annotation.Nullable;
 
+import com.boydti.fawe.FaweCache;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.blocks.BaseBlock;
@@ -27,6 +28,8 @@ import com.sk89q.worldedit.util.Location;
 public class HistoryExtent extends AbstractDelegateExtent {
     
     private final ChangeSet changeSet;
+    private final FaweChangeSet faweChangeSet;
+    private final SectionSnapshots snapshots;
     
     /**
      * Create a new instance.
@@ -36,111 +39,61 @@ public class HistoryExtent extends AbstractDelegateExtent {
      * @param thread
      */
     public HistoryExtent(final Extent extent, final ChangeSet changeSet) {
+        this(extent, changeSet, null);
+    }
+    
+    /**
+     * Create a new instance which reads previous blocks from copies of the world's sections
+     *
+     * @param extent the extent
+     * @param changeSet the change set
+     * @param world the world name (or null to read each block from the extent)
+     */
+    public HistoryExtent(final Extent extent, final ChangeSet changeSet, final String world) {
         super(extent);
         checkNotNull(changeSet);
         this.changeSet = changeSet;
+        this.faweChangeSet = changeSet instanceof FaweChangeSet ? (FaweChangeSet) changeSet : null;
+        this.snapshots = world != null ? new SectionSnapshots(world) : null;
     }
     
     @Override
     public synchronized boolean setBlock(final Vector location, final BaseBlock block) throws WorldEditException {
         if (super.setBlock(location, block)) {
-            BaseBlock previous;
-            try {
-                previous = getBlock(location);
-            } catch (final Exception e) {
-                previous = getBlock(location);
+            final int x = location.getBlockX();
+            final int y = location.getBlockY();
+            final int z = location.getBlockZ();
+            final int combined = snapshots != null ? snapshots.get(x, y, z) : -1;
+            BaseBlock previous = null;
+            final int id_p;
+            final int data_p;
+            if (combined == -1) {
+                try {
+                    previous = getBlock(location);
+                } catch (final Exception e) {
+                    previous = getBlock(location);
+                }
+                id_p = previous.getId();
+                data_p = previous.getData();
+            } else {
+                id_p = combined >> 4;
+                data_p = combined & 15;
             }
-            final int id_p = previous.getId();
             final int id_b = block.getId();
-            if (id_p == id_b) {
-                switch (id_p) {
-                    case 0:
-                    case 2:
-                    case 4:
-                    case 13:
-                    case 14:
-                    case 15:
-                    case 20:
-                    case 21:
-                    case 22:
-                    case 25:
-                    case 30:
-                    case 32:
-                    case 37:
-                    case 39:
-                    case 40:
-                    case 41:
-                    case 42:
-                    case 45:
-                    case 46:
-                    case 47:
-                    case 48:
-                    case 49:
-                    case 51:
-                    case 52:
-                    case 54:
-                    case 55:
-                    case 56:
-                    case 57:
-                    case 58:
-                    case 60:
-                    case 61:
-                    case 62:
-                    case 7:
-                    case 8:
-                    case 9:
-                    case 10:
-                    case 11:
-                    case 73:
-                    case 74:
-                    case 78:
-                    case 79:
-                    case 80:
-                    case 81:
-                    case 82:
-                    case 83:
-                    case 84:
-                    case 85:
-                    case 87:
-                    case 88:
-                    case 101:
-                    case 102:
-                    case 103:
-                    case 110:
-                    case 112:
-                    case 113:
-                    case 117:
-                    case 121:
-                    case 122:
-                    case 123:
-                    case 124:
-                    case 129:
-                    case 133:
-                    case 138:
-                    case 137:
-                    case 140:
-                    case 165:
-                    case 166:
-                    case 169:
-                    case 170:
-                    case 172:
-                    case 173:
-                    case 174:
-                    case 176:
-                    case 177:
-                    case 181:
-                    case 182:
-                    case 188:
-                    case 189:
-                    case 190:
-                    case 191:
-                    case 192:
-                        return false;
-                    default:
-                        if (block.getData() == previous.getData()) {
-                            return false;
-                        }
+            if ((id_p == id_b) && (!FaweCache.hasData(id_p) || (block.getData() == data_p))) {
+                return false;
+            }
+            final int combined_b = (id_b << 4) + block.getData();
+            onChange(x, y, z, (id_p << 4) + data_p, combined_b);
+            if (snapshots != null) {
+                snapshots.set(x, y, z, combined_b);
+            }
+            if (combined != -1) {
+                if ((faweChangeSet != null) && !block.hasNbtData()) {
+                    faweChangeSet.add(x, y, z, combined, combined_b);
+                    return true;
                 }
+                previous = new BaseBlock(id_p, data_p);
             }
             changeSet.add(new BlockChange(location.toBlockVector(), previous, block));
             return true;
@@ -148,6 +101,25 @@ public class HistoryExtent extends AbstractDelegateExtent {
         return false;
     }
     
+    /**
+     * Called for each block change which is recorded
+     * @param x
+     * @param y
+     * @param z
+     * @param combinedFrom (id << 4) + data
+     * @param combinedTo (id << 4) + data
+     */
+    protected void onChange(final int x, final int y, final int z, final int combinedFrom, final int combinedTo) {}
+    
+    /**
+     * Drop the section copies used to read previous blocks (once the edit's changes have been flushed)
+     */
+    public void clearSnapshots() {
+        if (snapshots != null) {
+            snapshots.clear();
+        }
+    }
+    
     @Nullable
     @Override
     public Entity createEntity(final Location location, final BaseEntity state) {
@@ -160,27 +132,29 @@ public class HistoryExtent extends AbstractDelegateExtent {
     
     @Override
     public List<? extends Entity> getEntities() {
-        return wrapEntities(super.getEntities());
+        return wrapEntities(super.getEntities(), changeSet);
     }
     
     @Override
     public List<? extends Entity> getEntities(final Region region) {
-        return wrapEntities(super.getEntities(region));
+        return wrapEntities(super.getEntities(region), changeSet);
     }
     
-    private List<? extends Entity> wrapEntities(final List<? extends Entity> entities) {
+    static List<? extends Entity> wrapEntities(final List<? extends Entity> entities, final ChangeSet changeSet) {
         final List<Entity> newList = new ArrayList<Entity>(entities.size());
         for (final Entity entity : entities) {
-            newList.add(new TrackedEntity(entity));
+            newList.add(new TrackedEntity(entity, changeSet));
         }
         return newList;
     }
     
-    private class TrackedEntity implements Entity {
+    static class TrackedEntity implements Entity {
         private final Entity entity;
+        private final ChangeSet changeSet;
         
-        private TrackedEntity(final Entity entity) {
+        TrackedEntity(final Entity entity, final ChangeSet changeSet) {
             this.entity = entity;
+            this.changeSet = changeSet;
         }
         
         @Override
@@ -0,0 +1,79 @@
+package com.boydti.fawe.object;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A growable FIFO of primitive longs (e.g. packed block positions)
+ */
+public class LongQueue {
+
+    private long[] values;
+    private int head;
+    private int size;
+
+    public LongQueue() {
+        this(64);
+    }
+
+    public LongQueue(final int capacity) {
+        int length = 16;
+        while (length < capacity) {
+            length <<= 1;
+        }
+        this.values = new long[length];
+    }
+
+    public void add(final long value) {
+        if (size == values.length) {
+            final long[] tmp = new long[values.length << 1];
+            final int tail = values.length - head;
+            System.arraycopy(values, head, tmp, 0, tail);
+            System.arraycopy(values, 0, tmp, tail, head);
+            values = tmp;
+            head = 0;
+        }
+        values[(head + size) & (values.length - 1)] = value;
+        size++;
+    }
+
+    public long poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final long value = values[head];
+        head = (head + 1) & (values.length - 1);
+        size--;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pack a block position into a long (x and z: 26 bits, y: 12 bits)
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public static long pack(final int x, final int y, final int z) {
+        return (((long) x & 0x3FFFFFFL) << 38) | (((long) z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
+    public static int unpackX(final long pair) {
+        return (int) (pair >> 38);
+    }
+
+    public static int unpackY(final long pair) {
+        return (int) ((pair << 52) >> 52);
+    }
+
+    public static int unpackZ(final long pair) {
+        return (int) ((pair << 26) >> 38);
+    }
+}
@@ -2,7 +2,9 @@ package com.boydti.fawe.object;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.BBC;
 import com.boydti.fawe.config.Settings;
 import com.boydti.fawe.util.MainUtil;
@@ -25,19 +27,20 @@ import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
 
 public class ProcessedWEExtent extends AbstractDelegateExtent {
-    private Extent parent;
+    protected Extent parent;
     
-    private boolean BSblocked = false;
-    private boolean Eblocked = false;
-    private int BScount = 0;
-    private int Ecount = 0;
-    private int count = 0;
+    protected volatile boolean BSblocked = false;
+    protected volatile boolean Eblocked = false;
+    protected final AtomicInteger BScount = new AtomicInteger();
+    protected final AtomicInteger Ecount = new AtomicInteger();
+    protected final AtomicInteger count = new AtomicInteger();
 
-    private int max;
-    private final FawePlayer<?> user;
-    private final String world;
-    private final HashSet<RegionWrapper> mask;
-    private final Thread thread;
+    protected int max;
+    protected final FawePlayer<?> user;
+    protected final String world;
+    protected final HashSet<RegionWrapper> mask;
+    protected final ChunkMask chunkMask;
+    protected final Thread thread;
     
     public ProcessedWEExtent(World world, Thread thread, FawePlayer<?> player, HashSet<RegionWrapper> mask, int max) {
         super(world);
@@ -45,6 +48,7 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
         this.world = world.getName();
         this.max = max != -1 ? max : Integer.MAX_VALUE;
         this.mask = mask;
+        this.chunkMask = new ChunkMask(mask);
         this.thread = thread;
     }
     
@@ -52,6 +56,27 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
         this.max = max != -1 ? max : Integer.MAX_VALUE;
     }
 
+    public ChunkMask getChunkMask() {
+        return chunkMask;
+    }
+    
+    /**
+     * Count a number of block changes against the limit
+     * @param amount
+     * @return false if the limit would be exceeded
+     */
+    public boolean reserve(final int amount) {
+        while (true) {
+            final int current = count.get();
+            if ((current + amount) > max) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + amount)) {
+                return true;
+            }
+        }
+    }
+
     public void setParent(Extent parent) {
         this.parent = parent;
     }
@@ -61,12 +86,11 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
         if (Eblocked) {
             return null;
         }
-        Ecount++;
-        if (Ecount > Settings.MAX_ENTITIES) {
+        if (Ecount.incrementAndGet() == (Settings.MAX_ENTITIES + 1)) {
             Eblocked = true;
             MainUtil.sendAdmin(BBC.WORLDEDIT_DANGEROUS_WORLDEDIT.format(world + ": " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ(), user));
         }
-        if (WEManager.IMP.maskContains(mask, location.getBlockX(), location.getBlockZ())) {
+        if (chunkMask.contains(location.getBlockX(), location.getBlockZ())) {
             TaskManager.IMP.task(new Runnable() {
                 @Override
                 public void run() {
@@ -87,26 +111,29 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
         }
     }
     
-    private BaseBlock lastBlock;
-    private BlockVector lastVector;
+    private volatile CachedBlock lastBlock;
     
     @Override
     public BaseBlock getLazyBlock(Vector position) {
-        if (lastBlock != null && lastVector.equals(position.toBlockVector())) {
-            return lastBlock;
+        final BlockVector vector = position.toBlockVector();
+        final CachedBlock last = lastBlock;
+        if (last != null && last.vector.equals(vector)) {
+            return last.block;
         }
+        final BaseBlock block;
         if (!SetQueue.IMP.isChunkLoaded(world, position.getBlockX() >> 4, position.getBlockZ() >> 4)) {
             try {
-                lastVector = position.toBlockVector();
-                return lastBlock = super.getBlock(position);
+                block = super.getBlock(position);
             } catch (Throwable e) {
                 return EditSession.nullBlock;
             }
+        } else {
+            synchronized (thread) {
+                block = super.getLazyBlock(position);
+            }
         }
-        synchronized (thread) {
-            lastVector = position.toBlockVector();
-            return lastBlock = super.getLazyBlock(position);
-        }
+        lastBlock = new CachedBlock(vector, block);
+        return block;
     }
     
     @Override
@@ -131,176 +158,48 @@ public class ProcessedWEExtent extends AbstractDelegateExtent {
     @Override
     public boolean setBlock(final Vector location, final BaseBlock block) throws WorldEditException {
         final short id = (short) block.getType();
-        switch (id) {
-            case 54:
-            case 130:
-            case 142:
-            case 27:
-            case 137:
-            case 52:
-            case 154:
-            case 84:
-            case 25:
-            case 144:
-            case 138:
-            case 176:
-            case 177:
-            case 63:
-            case 119:
-            case 68:
-            case 323:
-            case 117:
-            case 116:
-            case 28:
-            case 66:
-            case 157:
-            case 61:
-            case 62:
-            case 140:
-            case 146:
-            case 149:
-            case 150:
-            case 158:
-            case 23:
-            case 123:
-            case 124:
-            case 29:
-            case 33:
-            case 151:
-            case 178: {
-                if (BSblocked) {
-                    return false;
-                }
-                BScount++;
-                if (BScount > Settings.MAX_BLOCKSTATES) {
-                    BSblocked = true;
-                    MainUtil.sendAdmin(BBC.WORLDEDIT_DANGEROUS_WORLDEDIT.format(world + ": " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ(), user));
-                }
-                final int x = location.getBlockX();
-                final int z = location.getBlockZ();
-                if (WEManager.IMP.maskContains(mask, x, z)) {
-                    if (count++ > max) {
-                        if (parent != null) {
-                            WEManager.IMP.cancelEdit(parent);
-                            parent = null;
-                        }
-                        return false;
-                    }
-                    SetQueue.IMP.setBlock(world, x, location.getBlockY(), z, id, (byte) block.getData());
-                }
-                break;
+        final int x = location.getBlockX();
+        final int y = location.getBlockY();
+        final int z = location.getBlockZ();
+        if (FaweCache.hasNBT(id)) {
+            if (BSblocked) {
+                return false;
+            }
+            if (BScount.incrementAndGet() == (Settings.MAX_BLOCKSTATES + 1)) {
+                BSblocked = true;
+                MainUtil.sendAdmin(BBC.WORLDEDIT_DANGEROUS_WORLDEDIT.format(world + ": " + x + "," + y + "," + z, user));
             }
-            default: {
-                final int x = location.getBlockX();
-                final int y = location.getBlockY();
-                final int z = location.getBlockZ();
-                if (WEManager.IMP.maskContains(mask, location.getBlockX(), location.getBlockZ())) {
-                    if (count++ > max) {
+            if (chunkMask.contains(x, z)) {
+                if (count.getAndIncrement() > max) {
+                    if (parent != null) {
                         WEManager.IMP.cancelEdit(parent);
                         parent = null;
-                        return false;
                     }
-                    switch (id) {
-                        case 0:
-                        case 2:
-                        case 4:
-                        case 13:
-                        case 14:
-                        case 15:
-                        case 20:
-                        case 21:
-                        case 22:
-                        case 25:
-                        case 30:
-                        case 32:
-                        case 37:
-                        case 39:
-                        case 40:
-                        case 41:
-                        case 42:
-                        case 45:
-                        case 46:
-                        case 47:
-                        case 48:
-                        case 49:
-                        case 51:
-                        case 52:
-                        case 54:
-                        case 55:
-                        case 56:
-                        case 57:
-                        case 58:
-                        case 60:
-                        case 61:
-                        case 62:
-                        case 7:
-                        case 8:
-                        case 9:
-                        case 10:
-                        case 11:
-                        case 73:
-                        case 74:
-                        case 78:
-                        case 79:
-                        case 80:
-                        case 81:
-                        case 82:
-                        case 83:
-                        case 84:
-                        case 85:
-                        case 87:
-                        case 88:
-                        case 101:
-                        case 102:
-                        case 103:
-                        case 110:
-                        case 112:
-                        case 113:
-                        case 117:
-                        case 121:
-                        case 122:
-                        case 123:
-                        case 124:
-                        case 129:
-                        case 133:
-                        case 138:
-                        case 137:
-                        case 140:
-                        case 165:
-                        case 166:
-                        case 169:
-                        case 170:
-                        case 172:
-                        case 173:
-                        case 174:
-                        case 176:
-                        case 177:
-                        case 181:
-                        case 182:
-                        case 188:
-                        case 189:
-                        case 190:
-                        case 191:
-                        case 192: {
-                            SetQueue.IMP.setBlock(world, x, y, z, id);
-                            break;
-                        }
-                        default: {
-                            SetQueue.IMP.setBlock(world, x, y, z, id, (byte) block.getData());
-                            break;
-                        }
-                    }
-                    return true;
+                    return false;
                 }
+                SetQueue.IMP.setBlock(world, x, y, z, id, (byte) block.getData());
+            }
+            return false;
+        }
+        if (chunkMask.contains(x, z)) {
+            if (count.getAndIncrement() > max) {
+                WEManager.IMP.cancelEdit(parent);
+                parent = null;
+                return false;
+            }
+            if (FaweCache.hasData(id)) {
+                SetQueue.IMP.setBlock(world, x, y, z, id, (byte) block.getData());
+            } else {
+                SetQueue.IMP.setBlock(world, x, y, z, id);
             }
-            
+            return true;
         }
         return false;
     }
     
     @Override
     public boolean setBiome(final Vector2D position, final BaseBiome biome) {
-        if (WEManager.IMP.maskContains(mask, position.getBlockX(), position.getBlockZ())) {
+        if (chunkMask.contains(position.getBlockX(), position.getBlockZ())) {
             SetQueue.IMP.setBiome(world, position.getBlockX(), position.getBlockZ(), biome);
         }
         return false;
@@ -0,0 +1,291 @@
+package com.boydti.fawe.object;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.FaweQueue;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.function.mask.BlockMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.patterns.Pattern;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * A flood fill which fills runs along x at a time (for //fill, //drain and //fixwater)<br>
+ *  - A block can be filled if it is in the region, within the height bounds and its combined id ((id << 4) + data) is allowed<br>
+ *  - Blocks are read from the queue's section snapshots; only the most recently used sections are kept<br>
+ *  - A mask is only tested if it can't be turned into a table of combined ids (see getAllowed(Mask))<br>
+ *  - Neighbouring rows (z, and y up and/or down) are queued once per run of fillable blocks<br>
+ *  - If horizontal spreading is limited to one layer, blocks below it only spread downwards (as DownwardVisitor)<br>
+ */
+@SuppressWarnings("deprecation")
+public class ScanlineFill implements Operation {
+
+    private static final char[] EMPTY = new char[4096];
+
+    // The number of section snapshots kept (a fill spreads from its frontier, so older sections are rarely read again)
+    private static final int MAX_SECTIONS = 256;
+
+    private final EditSession session;
+    private final Region region;
+    private final int minY;
+    private final int maxY;
+    private final boolean[] allowed;
+    private Mask mask;
+    private final Pattern pattern;
+    private final SectionPattern sections;
+    private final FaweExtent extent;
+
+    private boolean up = true;
+    private int spreadY = -1;
+
+    private final SectionBitSet visited = new SectionBitSet();
+    private final LongQueue queue = new LongQueue();
+    private final LinkedHashMap<Long, char[]> cache = new LinkedHashMap<Long, char[]>(MAX_SECTIONS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, char[]> eldest) {
+            return size() > MAX_SECTIONS;
+        }
+    };
+    private long lastKey = Long.MIN_VALUE;
+    private char[] lastSection;
+
+    private volatile boolean cancelled;
+    private int affected;
+
+    /**
+     * @param session
+     * @param region the region to fill within
+     * @param minY
+     * @param maxY
+     * @param allowed which combined ids can be filled (or null for any)
+     * @param pattern the pattern to fill with
+     * @param extent the extent to write to (or null to set blocks through the EditSession)
+     */
+    public ScanlineFill(final EditSession session, final Region region, final int minY, final int maxY, final boolean[] allowed, final Pattern pattern, final FaweExtent extent) {
+        this.session = session;
+        this.region = region;
+        this.minY = Math.max(0, minY);
+        this.maxY = Math.min(255, maxY);
+        this.allowed = allowed;
+        this.pattern = pattern;
+        this.sections = extent != null ? SectionPattern.get(pattern) : null;
+        this.extent = extent;
+    }
+
+    /**
+     * Get which combined ids are one of the given block ids (with any data)
+     * @param ids
+     * @return
+     */
+    public static boolean[] getAllowed(final int... ids) {
+        final boolean[] allowed = new boolean[65536];
+        for (final int id : ids) {
+            for (int data = 0; data < 16; data++) {
+                allowed[(id << 4) + data] = true;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Get which combined ids a block mask matches
+     * @param mask
+     * @return the table, or null if the mask isn't a block mask (so it has to be tested with setMask)
+     */
+    public static boolean[] getAllowed(final Mask mask) {
+        if (!(mask instanceof BlockMask)) {
+            return null;
+        }
+        final boolean[] allowed = new boolean[65536];
+        for (final BaseBlock block : ((BlockMask) mask).getBlocks()) {
+            final int id = block.getType();
+            if (block.getData() == -1) {
+                for (int data = 0; data < 16; data++) {
+                    allowed[(id << 4) + data] = true;
+                }
+            } else {
+                allowed[(id << 4) + block.getData()] = true;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Set a mask blocks must also match to be filled
+     * @param mask
+     */
+    public void setMask(final Mask mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Set if the fill can spread upwards
+     * @param up
+     */
+    public void setUp(final boolean up) {
+        this.up = up;
+    }
+
+    /**
+     * Only spread horizontally on one layer (blocks below it only spread downwards)
+     * @param y
+     */
+    public void setSpreadY(final int y) {
+        this.spreadY = y;
+    }
+
+    /**
+     * Fill a block and spread from it (it doesn't need to be fillable)
+     * @param position
+     */
+    public void visit(final Vector position) {
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        if (visited.add(x, y, z)) {
+            queue.add(LongQueue.pack(x, y, z));
+        }
+    }
+
+    /**
+     * Get if a block is fillable
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public boolean test(final int x, final int y, final int z) {
+        if ((y < minY) || (y > maxY)) {
+            return false;
+        }
+        if ((allowed != null) && !allowed[getCombined(x, y, z)]) {
+            return false;
+        }
+        final Vector position = new Vector(x, y, z);
+        return region.contains(position) && ((mask == null) || mask.test(position));
+    }
+
+    /**
+     * Get the combined id ((id << 4) + data) of a block
+     * @param x
+     * @param y
+     * @param z
+     * @return the combined id, or 0 (air) outside the world
+     */
+    public int getCombined(final int x, final int y, final int z) {
+        if ((y < 0) || (y > 255)) {
+            return 0;
+        }
+        final long key = SectionBitSet.getKey(x, y, z);
+        if (key != lastKey) {
+            lastKey = key;
+            lastSection = getSection(x >> 4, y >> 4, z >> 4, key);
+        }
+        if (lastSection != null) {
+            return lastSection[FaweCache.CACHE_J[y][x & 15][z & 15]];
+        }
+        final BaseBlock block = session.getLazyBlock(new Vector(x, y, z));
+        return (block.getType() << 4) + block.getData();
+    }
+
+    private char[] getSection(final int cx, final int cy, final int cz, final long key) {
+        if (cache.containsKey(key)) {
+            return cache.get(key);
+        }
+        final FaweQueue faweQueue = SetQueue.IMP.queue;
+        final String world = session.getWorld().getName();
+        final char[] section;
+        if (((faweQueue.getSectionMask(world, cx, cz) >> cy) & 1) == 0) {
+            section = EMPTY;
+        } else {
+            section = faweQueue.getCachedSection(world, cx, cy, cz);
+        }
+        cache.put(key, section);
+        return section;
+    }
+
+    private boolean canSpread(final int y) {
+        return (spreadY == -1) || (y == spreadY);
+    }
+
+    /**
+     * Get the number of blocks which were set
+     * @return
+     */
+    public int getAffected() {
+        return affected;
+    }
+
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        while (!queue.isEmpty() && !cancelled) {
+            final long pair = queue.poll();
+            final int x = LongQueue.unpackX(pair);
+            final int y = LongQueue.unpackY(pair);
+            final int z = LongQueue.unpackZ(pair);
+            int left = x;
+            int right = x;
+            if (canSpread(y)) {
+                while (!visited.contains(left - 1, y, z) && test(left - 1, y, z)) {
+                    visited.add(--left, y, z);
+                }
+                while (!visited.contains(right + 1, y, z) && test(right + 1, y, z)) {
+                    visited.add(++right, y, z);
+                }
+                queueRow(left, right, y, z + 1);
+                queueRow(left, right, y, z - 1);
+            }
+            queueRow(left, right, y - 1, z);
+            if (up) {
+                queueRow(left, right, y + 1, z);
+            }
+            for (int i = left; i <= right; i++) {
+                if (set(i, y, z)) {
+                    affected++;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queue the fillable blocks in a row next to a run (only the first block of each run if it can spread)
+     */
+    private void queueRow(final int left, final int right, final int y, final int z) {
+        final boolean spread = canSpread(y);
+        boolean run = false;
+        for (int x = left; x <= right; x++) {
+            if (visited.contains(x, y, z) || !test(x, y, z)) {
+                run = false;
+                continue;
+            }
+            if (!run || !spread) {
+                visited.add(x, y, z);
+                queue.add(LongQueue.pack(x, y, z));
+            }
+            run = spread;
+        }
+    }
+
+    private boolean set(final int x, final int y, final int z) throws WorldEditException {
+        if (sections != null) {
+            final int combined = sections.get(x, y, z);
+            return extent.setBlock(x, y, z, combined >> 4, combined & 15);
+        }
+        final Vector position = new Vector(x, y, z);
+        return session.setBlock(position, pattern.next(position));
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
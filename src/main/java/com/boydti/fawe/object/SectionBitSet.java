@@ -0,0 +1,85 @@
+package com.boydti.fawe.object;
+
+import java.util.HashMap;
+
+/**
+ * A set of block positions stored as one 4096 bit tile per 16x16x16 section<br>
+ *  - No objects are created per position (only per section)<br>
+ *  - The most recently used tile is cached, as lookups are usually next to each other<br>
+ */
+public class SectionBitSet {
+
+    private final HashMap<Long, long[]> tiles = new HashMap<>();
+    private long lastKey = Long.MIN_VALUE;
+    private long[] lastTile;
+    private int size;
+
+    /**
+     * The key of the section containing a position
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public static long getKey(final int x, final int y, final int z) {
+        return (((long) (x >> 4) & 0x3FFFFFFL) << 38) | (((long) (z >> 4) & 0x3FFFFFFL) << 12) | ((y >> 4) & 0xFFFL);
+    }
+
+    private long[] getTile(final int x, final int y, final int z, final boolean create) {
+        final long key = getKey(x, y, z);
+        if ((key == lastKey) && (lastTile != null)) {
+            return lastTile;
+        }
+        long[] tile = tiles.get(key);
+        if (tile == null) {
+            if (!create) {
+                return null;
+            }
+            tile = new long[64];
+            tiles.put(key, tile);
+        }
+        lastKey = key;
+        lastTile = tile;
+        return tile;
+    }
+
+    /**
+     * Add a position
+     * @param x
+     * @param y
+     * @param z
+     * @return true if the position was not already in the set
+     */
+    public boolean add(final int x, final int y, final int z) {
+        final long[] tile = getTile(x, y, z, true);
+        final int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        final long bit = 1L << (index & 63);
+        final long value = tile[index >> 6];
+        if ((value & bit) != 0) {
+            return false;
+        }
+        tile[index >> 6] = value | bit;
+        size++;
+        return true;
+    }
+
+    public boolean contains(final int x, final int y, final int z) {
+        final long[] tile = getTile(x, y, z, false);
+        if (tile == null) {
+            return false;
+        }
+        final int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        return (tile[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        tiles.clear();
+        lastKey = Long.MIN_VALUE;
+        lastTile = null;
+        size = 0;
+    }
+}
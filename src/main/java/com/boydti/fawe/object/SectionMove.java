@@ -0,0 +1,146 @@
+package com.boydti.fawe.object;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.FaweQueue;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Moves the blocks in a region by an offset, reading the source a section at a time<br>
+ *  - Sections (and the blocks in them) are visited furthest along the offset first, so a block is always read before anything is moved onto it<br>
+ *  - That means no buffer is needed: each source section is snapshotted, then its blocks are written straight to their destination<br>
+ *  - Each source block is replaced before anything is moved onto it, so only the vacated blocks keep the replacement<br>
+ *  - Blocks which can have NBT are read and written as full blocks through the EditSession<br>
+ */
+public class SectionMove implements Operation {
+
+    private final EditSession session;
+    private final FaweExtent extent;
+    private final Region region;
+    private final int dx;
+    private final int dy;
+    private final int dz;
+    private final boolean copyAir;
+    private final int replacementId;
+    private final int replacementData;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param session the session to read NBT from (and write it to)
+     * @param extent the extent to write to
+     * @param region
+     * @param offset
+     * @param copyAir
+     * @param replacement the block to leave behind (which must not have NBT)
+     */
+    public SectionMove(final EditSession session, final FaweExtent extent, final Region region, final Vector offset, final boolean copyAir, final BaseBlock replacement) {
+        this.session = session;
+        this.extent = extent;
+        this.region = region;
+        this.dx = offset.getBlockX();
+        this.dy = offset.getBlockY();
+        this.dz = offset.getBlockZ();
+        this.copyAir = copyAir;
+        this.replacementId = replacement.getType();
+        this.replacementData = replacement.getData();
+    }
+
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final String world = session.getWorld().getName();
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = Math.max(0, min.getBlockY());
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = Math.min(255, max.getBlockY());
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        // Iterate each axis backwards if moving forwards along it (and vice versa)
+        final int stepX = dx > 0 ? -1 : 1;
+        final int stepY = dy > 0 ? -1 : 1;
+        final int stepZ = dz > 0 ? -1 : 1;
+        for (int cy = first(minY >> 4, maxY >> 4, stepY); (cy >= (minY >> 4)) && (cy <= (maxY >> 4)); cy += stepY) {
+            final int by = Math.max(minY, cy << 4);
+            final int ty = Math.min(maxY, (cy << 4) + 15);
+            for (int cz = first(minZ >> 4, maxZ >> 4, stepZ); (cz >= (minZ >> 4)) && (cz <= (maxZ >> 4)); cz += stepZ) {
+                final int bz = Math.max(minZ, cz << 4);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                for (int cx = first(minX >> 4, maxX >> 4, stepX); (cx >= (minX >> 4)) && (cx <= (maxX >> 4)); cx += stepX) {
+                    if (cancelled) {
+                        return null;
+                    }
+                    final boolean empty = ((queue.getSectionMask(world, cx, cz) >> cy) & 1) == 0;
+                    if (empty && !copyAir) {
+                        continue;
+                    }
+                    final char[] ids = empty ? null : queue.getCachedSection(world, cx, cy, cz);
+                    final int bx = Math.max(minX, cx << 4);
+                    final int tx = Math.min(maxX, (cx << 4) + 15);
+                    for (int y = first(by, ty, stepY); (y >= by) && (y <= ty); y += stepY) {
+                        for (int z = first(bz, tz, stepZ); (z >= bz) && (z <= tz); z += stepZ) {
+                            for (int x = first(bx, tx, stepX); (x >= bx) && (x <= tx); x += stepX) {
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    continue;
+                                }
+                                move(x, y, z, empty, ids);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int first(final int min, final int max, final int step) {
+        return step > 0 ? min : max;
+    }
+
+    private void move(final int x, final int y, final int z, final boolean empty, final char[] ids) throws WorldEditException {
+        final int id;
+        final int data;
+        if (empty) {
+            id = 0;
+            data = 0;
+        } else if (ids != null) {
+            final int combined = ids[FaweCache.CACHE_J[y][x & 15][z & 15]];
+            id = combined >> 4;
+            data = combined & 15;
+        } else {
+            final BaseBlock block = session.getLazyBlock(new Vector(x, y, z));
+            id = block.getType();
+            data = block.getData();
+        }
+        if ((id == 0) && !copyAir) {
+            return;
+        }
+        final int ty = y + dy;
+        final BaseBlock block = FaweCache.hasNBT(id) && (ty >= 0) && (ty <= 255) ? session.getBlock(new Vector(x, y, z)) : null;
+        // Remove the original (anything moved here later will replace it)
+        extent.setBlock(x, y, z, replacementId, replacementData);
+        if ((ty < 0) || (ty > 255)) {
+            return;
+        }
+        if ((block != null) && block.hasNbtData()) {
+            session.setBlock(new Vector(x + dx, ty, z + dz), block);
+        } else {
+            extent.setBlock(x + dx, ty, z + dz, id, data);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,252 @@
+package com.boydti.fawe.object;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import com.boydti.fawe.FaweCache;
+import com.sk89q.worldedit.CuboidClipboard;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.patterns.BlockChance;
+import com.sk89q.worldedit.patterns.ClipboardPattern;
+import com.sk89q.worldedit.patterns.Pattern;
+import com.sk89q.worldedit.patterns.RandomFillPattern;
+import com.sk89q.worldedit.patterns.SingleBlockPattern;
+
+/**
+ * Fills a whole 16x16x16 section with combined ids ((id << 4) + data) from a pattern in one call<br>
+ *  - Single blocks are an array fill<br>
+ *  - Random patterns are a weighted table lookup using a per thread PseudoRandom<br>
+ *  - Clipboard patterns are copied from a flattened id array, repeating along each axis<br>
+ *  - Instances are thread safe; patterns which can produce NBT are not supported<br>
+ */
+@SuppressWarnings("deprecation")
+public abstract class SectionPattern {
+
+    /**
+     * Get the section pattern for a pattern
+     * @param pattern
+     * @return the section pattern, or null if the pattern isn't supported
+     */
+    public static SectionPattern get(final Pattern pattern) {
+        try {
+            final Class<?> clazz = pattern.getClass();
+            if (clazz == SingleBlockPattern.class) {
+                final BaseBlock block = ((SingleBlockPattern) pattern).getBlock();
+                return block.hasNbtData() ? null : new Single(getCombined(block));
+            }
+            if (clazz == RandomFillPattern.class) {
+                final List<?> blocks = (List<?>) getField(pattern, List.class);
+                return blocks == null ? null : Weighted.create(blocks);
+            }
+            if (clazz == ClipboardPattern.class) {
+                final CuboidClipboard clipboard = (CuboidClipboard) getField(pattern, CuboidClipboard.class);
+                return clipboard == null ? null : Repeating.create(clipboard);
+            }
+        } catch (final Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static Object getField(final Object instance, final Class<?> type) throws Exception {
+        for (final Field field : instance.getClass().getDeclaredFields()) {
+            if (type.isAssignableFrom(field.getType())) {
+                field.setAccessible(true);
+                return field.get(instance);
+            }
+        }
+        return null;
+    }
+
+    private static int getCombined(final BaseBlock block) {
+        return ((block.getType() & 4095) << 4) + (block.getData() & 15);
+    }
+
+    /**
+     * Get the combined id for a position
+     * @param x
+     * @param y
+     * @param z
+     * @return (id << 4) + data
+     */
+    public abstract int get(final int x, final int y, final int z);
+
+    /**
+     * Fill a section with the combined ids for each position
+     * @param ids 4096 ids, indexed the same as FaweCache.CACHE_J
+     * @param cx
+     * @param cy
+     * @param cz
+     */
+    public void fill(final char[] ids, final int cx, final int cy, final int cz) {
+        final int bx = cx << 4;
+        final int bz = cz << 4;
+        final byte[] xs = FaweCache.CACHE_X[cy];
+        final short[] ys = FaweCache.CACHE_Y[cy];
+        final byte[] zs = FaweCache.CACHE_Z[cy];
+        for (int k = 0; k < 4096; k++) {
+            ids[k] = (char) get(bx + xs[k], ys[k], bz + zs[k]);
+        }
+    }
+
+    private static class Single extends SectionPattern {
+        private final int combined;
+
+        private Single(final int combined) {
+            this.combined = combined;
+        }
+
+        @Override
+        public int get(final int x, final int y, final int z) {
+            return combined;
+        }
+
+        @Override
+        public void fill(final char[] ids, final int cx, final int cy, final int cz) {
+            Arrays.fill(ids, (char) combined);
+        }
+    }
+
+    private static class Weighted extends SectionPattern {
+        private static final ThreadLocal<PseudoRandom> RANDOM = new ThreadLocal<PseudoRandom>() {
+            @Override
+            protected PseudoRandom initialValue() {
+                return new PseudoRandom((System.nanoTime() ^ (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L)) | 1);
+            }
+        };
+
+        // Each entry is picked with the same probability, so a block with a chance of n / 65536 fills n entries
+        private final char[] table = new char[65536];
+
+        private static Weighted create(final List<?> blocks) {
+            if (blocks.isEmpty()) {
+                return null;
+            }
+            final int size = blocks.size();
+            final int[] combined = new int[size];
+            final double[] chances = new double[size];
+            boolean cumulative = true;
+            for (int i = 0; i < size; i++) {
+                final BlockChance chance = (BlockChance) blocks.get(i);
+                if (chance.getBlock().hasNbtData()) {
+                    return null;
+                }
+                combined[i] = getCombined(chance.getBlock());
+                chances[i] = chance.getChance();
+                if ((i > 0) && (chances[i] < chances[i - 1])) {
+                    cumulative = false;
+                }
+            }
+            // RandomFillPattern stores its chances as a normalized running total
+            if (!cumulative || (Math.abs(chances[size - 1] - 1) > 0.0001)) {
+                double total = 0;
+                for (int i = 0; i < size; i++) {
+                    total += chances[i];
+                    chances[i] = total;
+                }
+                if (total <= 0) {
+                    return null;
+                }
+                for (int i = 0; i < size; i++) {
+                    chances[i] /= total;
+                }
+            }
+            final Weighted random = new Weighted();
+            int start = 0;
+            for (int i = 0; i < size; i++) {
+                final int end = i == (size - 1) ? 65536 : (int) Math.round(chances[i] * 65536);
+                if (end > start) {
+                    Arrays.fill(random.table, start, end, (char) combined[i]);
+                    start = end;
+                }
+            }
+            return random;
+        }
+
+        @Override
+        public int get(final int x, final int y, final int z) {
+            return table[(int) (RANDOM.get().nextLong() >>> 48)];
+        }
+
+        @Override
+        public void fill(final char[] ids, final int cx, final int cy, final int cz) {
+            final PseudoRandom random = RANDOM.get();
+            final char[] table = this.table;
+            for (int k = 0; k < 4096; k++) {
+                ids[k] = table[(int) (random.nextLong() >>> 48)];
+            }
+        }
+    }
+
+    private static class Repeating extends SectionPattern {
+        private final int width;
+        private final int height;
+        private final int length;
+        // Indexed by (y * length + z) * width + x
+        private final char[] ids;
+
+        private static Repeating create(final CuboidClipboard clipboard) {
+            final Vector size = clipboard.getSize();
+            final int width = size.getBlockX();
+            final int height = size.getBlockY();
+            final int length = size.getBlockZ();
+            if ((width <= 0) || (height <= 0) || (length <= 0)) {
+                return null;
+            }
+            final char[] ids = new char[width * height * length];
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < length; z++) {
+                    for (int x = 0; x < width; x++) {
+                        final BaseBlock block = clipboard.getPoint(new Vector(x, y, z));
+                        if (block.hasNbtData()) {
+                            return null;
+                        }
+                        ids[i++] = (char) getCombined(block);
+                    }
+                }
+            }
+            return new Repeating(width, height, length, ids);
+        }
+
+        private Repeating(final int width, final int height, final int length, final char[] ids) {
+            this.width = width;
+            this.height = height;
+            this.length = length;
+            this.ids = ids;
+        }
+
+        @Override
+        public int get(final int x, final int y, final int z) {
+            final int rx = Math.abs(x) % width;
+            final int ry = Math.abs(y) % height;
+            final int rz = Math.abs(z) % length;
+            return ids[(((ry * length) + rz) * width) + rx];
+        }
+
+        @Override
+        public void fill(final char[] ids, final int cx, final int cy, final int cz) {
+            // Clipboard offsets of each row and column in the section
+            final int[] xs = new int[16];
+            final int[] zs = new int[16];
+            final int bx = cx << 4;
+            final int bz = cz << 4;
+            for (int i = 0; i < 16; i++) {
+                xs[i] = Math.abs(bx + i) % width;
+                zs[i] = (Math.abs(bz + i) % length) * width;
+            }
+            final int by = cy << 4;
+            for (int y = 0; y < 16; y++) {
+                final int layer = (Math.abs(by + y) % height) * length * width;
+                for (int z = 0; z < 16; z++) {
+                    final int row = layer + zs[z];
+                    for (int x = 0; x < 16; x++) {
+                        ids[FaweCache.CACHE_J[by + y][x][z]] = this.ids[row + xs[x]];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.boydti.fawe.object;
+
+import java.util.Set;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.FaweQueue;
+import com.boydti.fawe.util.ParallelUtil;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Replaces blocks in a region using a lookup table over combined ids ((id << 4) + data)<br>
+ *  - Each section is read from the queue's snapshot and run through the table, and only changed blocks are written<br>
+ *  - Sections which are empty are skipped, unless air is being replaced<br>
+ *  - The replacement can't have NBT, as the table only holds ids and data<br>
+ */
+@SuppressWarnings("deprecation")
+public class SectionReplace implements Operation {
+
+    private final EditSession session;
+    private final Region region;
+    private final char[] table;
+    private final FaweExtent extent;
+
+    private boolean parallel;
+    private volatile boolean cancelled;
+
+    /**
+     * @param session the session to read from
+     * @param region
+     * @param table the combined id each combined id is replaced with (see getTable)
+     * @param extent the extent to write to
+     */
+    public SectionReplace(final EditSession session, final Region region, final char[] table, final FaweExtent extent) {
+        this.session = session;
+        this.region = region;
+        this.table = table;
+        this.extent = extent;
+    }
+
+    /**
+     * Get a table which maps the blocks in a filter to a replacement (and everything else to itself)
+     * @param filter the blocks to replace (a data value of -1 matches any data), or null for any block except air
+     * @param replacement
+     * @return the table, or null if the replacement has NBT
+     */
+    public static char[] getTable(final Set<BaseBlock> filter, final BaseBlock replacement) {
+        if (replacement.hasNbtData() || FaweCache.hasNBT(replacement.getType())) {
+            return null;
+        }
+        final char[] table = new char[65536];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (char) i;
+        }
+        final char combined = (char) ((replacement.getType() << 4) + replacement.getData());
+        if (filter == null) {
+            for (int i = 16; i < table.length; i++) {
+                table[i] = combined;
+            }
+            return table;
+        }
+        for (final BaseBlock block : filter) {
+            final int id = block.getType();
+            if (block.getData() == -1) {
+                for (int data = 0; data < 16; data++) {
+                    table[(id << 4) + data] = combined;
+                }
+            } else {
+                table[(id << 4) + block.getData()] = combined;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Process the region in chunk aligned tiles on multiple threads.<br>
+     * Only use this if the extent is thread safe.
+     *
+     * @param parallel
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = Math.max(0, min.getBlockY());
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = Math.min(255, max.getBlockY());
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        final boolean replaceAir = table[0] != 0;
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final String world = session.getWorld().getName();
+        final char[] air = new char[4096];
+        final ParallelUtil.ChunkTask task = new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (cancelled) {
+                    return;
+                }
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                final int sections = queue.getSectionMask(world, cx, cz);
+                for (int cy = minY >> 4; cy <= (maxY >> 4); cy++) {
+                    final char[] ids;
+                    if (((sections >> cy) & 1) == 0) {
+                        if (!replaceAir) {
+                            continue;
+                        }
+                        ids = air;
+                    } else {
+                        ids = queue.getCachedSection(world, cx, cy, cz);
+                    }
+                    final int by = Math.max(minY, cy << 4);
+                    final int ty = Math.min(maxY, (cy << 4) + 15);
+                    for (int y = by; y <= ty; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                final int from;
+                                if (ids != null) {
+                                    from = ids[FaweCache.CACHE_J[y][x & 15][z & 15]];
+                                } else {
+                                    final BaseBlock block = session.getLazyBlock(new Vector(x, y, z));
+                                    from = (block.getType() << 4) + block.getData();
+                                }
+                                final int to = table[from];
+                                if (to == from) {
+                                    continue;
+                                }
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    continue;
+                                }
+                                extent.setBlock(x, y, z, to >> 4, to & 15);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        if (parallel && ParallelUtil.isEnabled()) {
+            ParallelUtil.forEachChunk(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, task);
+            return null;
+        }
+        for (int cz = minZ >> 4; cz <= (maxZ >> 4); cz++) {
+            for (int cx = minX >> 4; cx <= (maxX >> 4); cx++) {
+                task.run(cx, cz);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,104 @@
+package com.boydti.fawe.object;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.SetQueue;
+
+/**
+ * Copies of the sections an edit has touched, as they were before the edit changed them<br>
+ *  - A section is copied from the queue the first time the edit reads it, then kept up to date with the edit's own changes<br>
+ *  - Sections are kept until cleared (the world is behind the queue, so a section read again would be stale)<br>
+ *  - Safe to use from multiple threads, as long as each section is only changed by one of them<br>
+ */
+public class SectionSnapshots {
+
+    // Sections which couldn't be read
+    private static final char[] UNREADABLE = new char[0];
+
+    private final String world;
+    private final ConcurrentHashMap<Long, char[]> sections = new ConcurrentHashMap<>();
+    private volatile Last last;
+
+    private static class Last {
+        private final long key;
+        private final char[] section;
+
+        private Last(final long key, final char[] section) {
+            this.key = key;
+            this.section = section;
+        }
+    }
+
+    /**
+     * @param world the world name
+     */
+    public SectionSnapshots(final String world) {
+        this.world = world;
+    }
+
+    /**
+     * Get the state of a block, as the edit has left it so far
+     * @param x
+     * @param y
+     * @param z
+     * @return the combined id (id << 4) + data, or -1 if the block must be read from the world (e.g. it has NBT)
+     */
+    public int get(final int x, final int y, final int z) {
+        if ((y < 0) || (y > 255)) {
+            return -1;
+        }
+        final char[] section = getSection(x >> 4, y >> 4, z >> 4);
+        if (section == UNREADABLE) {
+            return -1;
+        }
+        final int combined = section[FaweCache.CACHE_J[y][x & 15][z & 15]];
+        return FaweCache.hasNBT(combined >> 4) ? -1 : combined;
+    }
+
+    /**
+     * Record a change the edit has made
+     * @param x
+     * @param y
+     * @param z
+     * @param combined (id << 4) + data
+     */
+    public void set(final int x, final int y, final int z, final int combined) {
+        if ((y < 0) || (y > 255)) {
+            return;
+        }
+        final char[] section = getSection(x >> 4, y >> 4, z >> 4);
+        if (section != UNREADABLE) {
+            section[FaweCache.CACHE_J[y][x & 15][z & 15]] = (char) combined;
+        }
+    }
+
+    /**
+     * Drop all the copies (once the edit's changes have been flushed)
+     */
+    public void clear() {
+        sections.clear();
+        last = null;
+    }
+
+    private char[] getSection(final int cx, final int cy, final int cz) {
+        final long key = ((cx & 0x3FFFFFFL) << 30) | ((cz & 0x3FFFFFFL) << 4) | cy;
+        final Last cached = last;
+        if ((cached != null) && (cached.key == key)) {
+            return cached.section;
+        }
+        char[] section = sections.get(key);
+        if (section == null) {
+            section = SetQueue.IMP.queue.getCachedSection(world, cx, cy, cz);
+            if (section == null) {
+                section = UNREADABLE;
+            }
+            final char[] previous = sections.putIfAbsent(key, section);
+            if (previous != null) {
+                section = previous;
+            }
+        }
+        last = new Last(key, section);
+        return section;
+    }
+}
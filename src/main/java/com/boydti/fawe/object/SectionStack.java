@@ -0,0 +1,175 @@
+package com.boydti.fawe.object;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.FaweQueue;
+import com.boydti.fawe.util.SetQueue;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Stacks a cuboid by reading it once and stamping it repeatedly<br>
+ *  - The source is read from the queue's section snapshots into one combined id ((id << 4) + data) per block<br>
+ *  - Each copy is written from that buffer through a FaweExtent, so the source is never read again<br>
+ *  - Blocks with NBT are kept as full blocks and written through the EditSession<br>
+ *  - Only blocks in the region are copied (not its whole bounding box)<br>
+ */
+public class SectionStack implements Operation {
+
+    // Marks blocks in the bounding box which aren't in the region
+    private static final char OUTSIDE = Character.MAX_VALUE;
+
+    private final EditSession session;
+    private final FaweExtent extent;
+    private final Region region;
+    private final Vector step;
+    private final int count;
+    private final boolean copyAir;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param session the session to read from (and write NBT to)
+     * @param extent the extent to write to
+     * @param region the cuboid to stack
+     * @param step the offset between copies
+     * @param count the number of copies
+     * @param copyAir
+     */
+    public SectionStack(final EditSession session, final FaweExtent extent, final Region region, final Vector step, final int count, final boolean copyAir) {
+        this.session = session;
+        this.extent = extent;
+        this.region = region;
+        this.step = step;
+        this.count = count;
+        this.copyAir = copyAir;
+    }
+
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = Math.max(0, min.getBlockY());
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = Math.min(255, max.getBlockY());
+        final int maxZ = max.getBlockZ();
+        if (maxY < minY) {
+            return null;
+        }
+        final int width = (maxX - minX) + 1;
+        final int height = (maxY - minY) + 1;
+        final int length = (maxZ - minZ) + 1;
+
+        // Read the source once, indexed by ((y * length) + z) * width + x
+        final char[] ids = new char[width * height * length];
+        final boolean cuboid = region instanceof CuboidRegion;
+        if (!cuboid) {
+            // Blocks outside the region are never copied
+            Arrays.fill(ids, OUTSIDE);
+        }
+        final HashMap<Integer, BaseBlock> tiles = new HashMap<>();
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final String world = session.getWorld().getName();
+        final char[] air = new char[4096];
+        for (int cz = minZ >> 4; cz <= (maxZ >> 4); cz++) {
+            for (int cx = minX >> 4; cx <= (maxX >> 4); cx++) {
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                final int sections = queue.getSectionMask(world, cx, cz);
+                for (int cy = minY >> 4; cy <= (maxY >> 4); cy++) {
+                    final char[] section;
+                    if (((sections >> cy) & 1) == 0) {
+                        if (cuboid) {
+                            // Air
+                            continue;
+                        }
+                        section = air;
+                    } else {
+                        section = queue.getCachedSection(world, cx, cy, cz);
+                    }
+                    final int by = Math.max(minY, cy << 4);
+                    final int ty = Math.min(maxY, (cy << 4) + 15);
+                    for (int y = by; y <= ty; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    continue;
+                                }
+                                final int combined;
+                                if (section != null) {
+                                    combined = section[FaweCache.CACHE_J[y][x & 15][z & 15]];
+                                } else {
+                                    final BaseBlock block = session.getLazyBlock(new Vector(x, y, z));
+                                    combined = (block.getType() << 4) + block.getData();
+                                }
+                                final int index = ((((y - minY) * length) + (z - minZ)) * width) + (x - minX);
+                                ids[index] = (char) combined;
+                                if (FaweCache.hasNBT(combined >> 4)) {
+                                    final BaseBlock block = session.getBlock(new Vector(x, y, z));
+                                    if (block.hasNbtData()) {
+                                        tiles.put(index, block);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Stamp each copy
+        for (int i = 1; i <= count; i++) {
+            if (cancelled) {
+                return null;
+            }
+            final int ox = minX + (step.getBlockX() * i);
+            final int oy = minY + (step.getBlockY() * i);
+            final int oz = minZ + (step.getBlockZ() * i);
+            int index = 0;
+            for (int y = 0; y < height; y++) {
+                final int ty = oy + y;
+                if ((ty < 0) || (ty > 255)) {
+                    index += width * length;
+                    continue;
+                }
+                for (int z = 0; z < length; z++) {
+                    for (int x = 0; x < width; x++) {
+                        final int combined = ids[index++];
+                        if ((combined == OUTSIDE) || ((combined == 0) && !copyAir)) {
+                            continue;
+                        }
+                        extent.setBlock(ox + x, ty, oz + z, combined >> 4, combined & 15);
+                    }
+                }
+            }
+            for (final Entry<Integer, BaseBlock> entry : tiles.entrySet()) {
+                final int tile = entry.getKey();
+                final int x = tile % width;
+                final int z = (tile / width) % length;
+                final int y = tile / (width * length);
+                if (((oy + y) >= 0) && ((oy + y) <= 255)) {
+                    session.setBlock(new Vector(ox + x, oy + y, oz + z), entry.getValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,112 @@
+package com.boydti.fawe.object;
+
+import com.boydti.fawe.FaweCache;
+import com.boydti.fawe.util.ParallelUtil;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Sets a region from a SectionPattern one section at a time<br>
+ *  - Each section of the pattern is filled in a single call, then written through a FaweExtent<br>
+ *  - An optional mask is tested for each block before it is set<br>
+ *  - Chunks can be processed in parallel (see ParallelUtil), as section patterns are thread safe<br>
+ */
+public class SectionVisitor implements Operation {
+
+    private final Region region;
+    private final Mask mask;
+    private final SectionPattern pattern;
+    private final FaweExtent extent;
+
+    private boolean parallel;
+    private volatile boolean cancelled;
+
+    /**
+     * @param region
+     * @param mask the mask blocks must match, or null
+     * @param pattern
+     * @param extent
+     */
+    public SectionVisitor(final Region region, final Mask mask, final SectionPattern pattern, final FaweExtent extent) {
+        this.region = region;
+        this.mask = mask;
+        this.pattern = pattern;
+        this.extent = extent;
+    }
+
+    /**
+     * Process the region in chunk aligned tiles on multiple threads.<br>
+     * Only use this if the mask (and the extent) is thread safe.
+     *
+     * @param parallel
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public Operation resume(final RunContext run) throws WorldEditException {
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = Math.max(0, min.getBlockY());
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = Math.min(255, max.getBlockY());
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        final ParallelUtil.ChunkTask task = new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (cancelled) {
+                    return;
+                }
+                final char[] ids = new char[4096];
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                for (int cy = minY >> 4; cy <= (maxY >> 4); cy++) {
+                    pattern.fill(ids, cx, cy, cz);
+                    final int by = Math.max(minY, cy << 4);
+                    final int ty = Math.min(maxY, (cy << 4) + 15);
+                    for (int y = by; y <= ty; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if ((!cuboid || (mask != null)) && !test(new Vector(x, y, z), cuboid)) {
+                                    continue;
+                                }
+                                final int combined = ids[FaweCache.CACHE_J[y][x & 15][z & 15]];
+                                extent.setBlock(x, y, z, combined >> 4, combined & 15);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        if (parallel && ParallelUtil.isEnabled()) {
+            ParallelUtil.forEachChunk(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, task);
+            return null;
+        }
+        for (int cz = minZ >> 4; cz <= (maxZ >> 4); cz++) {
+            for (int cx = minX >> 4; cx <= (maxX >> 4); cx++) {
+                task.run(cx, cz);
+            }
+        }
+        return null;
+    }
+
+    private boolean test(final Vector pos, final boolean cuboid) {
+        return (cuboid || region.contains(pos)) && ((mask == null) || mask.test(pos));
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+}
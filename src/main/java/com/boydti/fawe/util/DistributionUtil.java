@@ -0,0 +1,111 @@
+package com.boydti.fawe.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.boydti.fawe.FaweCache;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.Vector;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.blocks.BaseBlock;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+
+/**
+ * Counts the blocks in a region by reading whole sections<br>
+ *  - Chunks are counted in parallel, each thread into its own int[65536] of combined ids ((id << 4) + data)<br>
+ *  - Empty sections are counted as air without being read, as are positions outside the world (y 0-255)<br>
+ *  - Sections the queue can't provide are read block by block from the EditSession<br>
+ */
+public class DistributionUtil {
+
+    /**
+     * Get the number of each combined id ((id << 4) + data) in a region
+     * @param session
+     * @param region
+     * @return
+     * @throws WorldEditException if a chunk couldn't be counted
+     */
+    public static int[] getHistogram(final EditSession session, final Region region) throws WorldEditException {
+        final int[] result = new int[65536];
+        if (session.getWorld() == null) {
+            return result;
+        }
+        final String world = session.getWorld().getName();
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int regionMinY = min.getBlockY();
+        final int minY = Math.max(0, regionMinY);
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int regionMaxY = max.getBlockY();
+        final int maxY = Math.min(255, regionMaxY);
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        final ConcurrentLinkedQueue<int[]> histograms = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<int[]> free = new ConcurrentLinkedQueue<>();
+        ParallelUtil.forEachChunk(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                int[] histogram = free.poll();
+                if (histogram == null) {
+                    histogram = new int[65536];
+                    histograms.add(histogram);
+                }
+                try {
+                    final int bx = Math.max(minX, cx << 4);
+                    final int bz = Math.max(minZ, cz << 4);
+                    final int tx = Math.min(maxX, (cx << 4) + 15);
+                    final int tz = Math.min(maxZ, (cz << 4) + 15);
+                    // Outside the world is air
+                    for (int y = regionMinY; y <= regionMaxY; y++) {
+                        if ((y >= 0) && (y <= 255)) {
+                            y = 255;
+                            continue;
+                        }
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if (cuboid || region.contains(new Vector(x, y, z))) {
+                                    histogram[0]++;
+                                }
+                            }
+                        }
+                    }
+                    final int sections = queue.getSectionMask(world, cx, cz);
+                    for (int cy = minY >> 4; cy <= (maxY >> 4); cy++) {
+                        final int by = Math.max(minY, cy << 4);
+                        final int ty = Math.min(maxY, (cy << 4) + 15);
+                        final boolean empty = ((sections >> cy) & 1) == 0;
+                        final char[] ids = empty ? null : queue.getCachedSection(world, cx, cy, cz);
+                        for (int y = by; y <= ty; y++) {
+                            for (int z = bz; z <= tz; z++) {
+                                for (int x = bx; x <= tx; x++) {
+                                    if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                        continue;
+                                    }
+                                    if (empty) {
+                                        histogram[0]++;
+                                    } else if (ids != null) {
+                                        histogram[ids[FaweCache.CACHE_J[y][x & 15][z & 15]]]++;
+                                    } else {
+                                        final BaseBlock block = session.getLazyBlock(new Vector(x, y, z));
+                                        histogram[((block.getType() & 4095) << 4) + (block.getData() & 15)]++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    free.add(histogram);
+                }
+            }
+        });
+        for (final int[] histogram : histograms) {
+            for (int i = 0; i < 65536; i++) {
+                result[i] += histogram[i];
+            }
+        }
+        return result;
+    }
+}
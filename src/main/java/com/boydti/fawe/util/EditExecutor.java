@@ -0,0 +1,235 @@
+package com.boydti.fawe.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.boydti.fawe.config.Settings;
+
+/**
+ * Runs edits on FAWE's own threads, rather than the platform's shared async scheduler<br>
+ *  - The number of threads is set by Settings.EDIT_THREADS<br>
+ *  - Each owner (player name, or null for the console) has its own queue, and owners take turns<br>
+ *  - An owner can only have Settings.EDIT_PLAYER_THREADS edits running at once, so one player can't take every thread<br>
+ *  - Chunk tiles within an edit are still split across ParallelUtil's pool<br>
+ */
+public class EditExecutor {
+
+    private static final ThreadLocal<String> OWNER = new ThreadLocal<>();
+
+    private static ExecutorService POOL;
+
+    private static final HashMap<String, ArrayDeque<Runnable>> QUEUES = new HashMap<>();
+    private static final HashMap<String, Integer> RUNNING = new HashMap<>();
+    private static final ArrayDeque<String> TURNS = new ArrayDeque<>();
+
+    private static int running;
+    private static int queued;
+    private static long submitted;
+    private static long completed;
+    private static long failed;
+    private static long time;
+
+    private static synchronized ExecutorService getPool() {
+        if (POOL == null) {
+            POOL = Executors.newFixedThreadPool(getThreads(), new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "FAWE-Edit-" + (count++));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return POOL;
+    }
+
+    private static int getThreads() {
+        return Math.max(1, Settings.EDIT_THREADS);
+    }
+
+    /**
+     * Get the owner of the edit running on this thread
+     * @return the player name, or null
+     */
+    public static String getOwner() {
+        return OWNER.get();
+    }
+
+    /**
+     * Queue an edit for the owner of the edit running on this thread
+     * @param task
+     */
+    public static void submit(final Runnable task) {
+        submit(getOwner(), task);
+    }
+
+    /**
+     * Queue an edit
+     * @param owner the player name, or null for the console
+     * @param task
+     */
+    public static synchronized void submit(final String owner, final Runnable task) {
+        ArrayDeque<Runnable> queue = QUEUES.get(owner);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            QUEUES.put(owner, queue);
+            TURNS.add(owner);
+        }
+        queue.add(task);
+        queued++;
+        submitted++;
+        schedule();
+    }
+
+    /**
+     * Start queued edits while there are free threads, one owner at a time
+     */
+    private static void schedule() {
+        final int limit = Math.max(1, Settings.EDIT_PLAYER_THREADS);
+        while (running < getThreads()) {
+            String next = null;
+            final Iterator<String> iter = TURNS.iterator();
+            while (iter.hasNext()) {
+                final String owner = iter.next();
+                final Integer count = RUNNING.get(owner);
+                if ((count == null) || (count < limit)) {
+                    iter.remove();
+                    next = owner;
+                    break;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            final ArrayDeque<Runnable> queue = QUEUES.get(next);
+            final Runnable task = queue.poll();
+            if (queue.isEmpty()) {
+                QUEUES.remove(next);
+            } else {
+                // Back of the line
+                TURNS.add(next);
+            }
+            final Integer count = RUNNING.get(next);
+            RUNNING.put(next, count == null ? 1 : count + 1);
+            running++;
+            queued--;
+            execute(next, task);
+        }
+    }
+
+    private static void execute(final String owner, final Runnable task) {
+        getPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.currentTimeMillis();
+                boolean success = false;
+                OWNER.set(owner);
+                try {
+                    task.run();
+                    success = true;
+                } catch (final Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    OWNER.remove();
+                    done(owner, System.currentTimeMillis() - start, success);
+                }
+            }
+        });
+    }
+
+    private static synchronized void done(final String owner, final long elapsed, final boolean success) {
+        final int count = RUNNING.get(owner) - 1;
+        if (count == 0) {
+            RUNNING.remove(owner);
+        } else {
+            RUNNING.put(owner, count);
+        }
+        running--;
+        time += elapsed;
+        if (success) {
+            completed++;
+        } else {
+            failed++;
+        }
+        schedule();
+    }
+
+    /**
+     * Stop the edit threads and drop any queued edits (e.g. when the plugin is disabled)<br>
+     *  - Running edits are interrupted, and the threads are started again on the next submit<br>
+     */
+    public static synchronized void shutdown() {
+        QUEUES.clear();
+        TURNS.clear();
+        queued = 0;
+        if (POOL != null) {
+            POOL.shutdownNow();
+            POOL = null;
+        }
+    }
+
+    /**
+     * @return the number of threads edits can run on
+     */
+    public static int getPoolSize() {
+        return getThreads();
+    }
+
+    /**
+     * @return the number of edits waiting for a thread
+     */
+    public static synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @param owner
+     * @return the number of edits an owner has waiting for a thread
+     */
+    public static synchronized int getQueued(final String owner) {
+        final ArrayDeque<Runnable> queue = QUEUES.get(owner);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of edits currently running
+     */
+    public static synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of edits submitted since startup
+     */
+    public static synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return the number of edits which completed without an error
+     */
+    public static synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the number of edits which threw an error
+     */
+    public static synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the average time (in milliseconds) an edit took to run
+     */
+    public static synchronized long getAverageTime() {
+        final long total = completed + failed;
+        return total == 0 ? 0 : time / total;
+    }
+}
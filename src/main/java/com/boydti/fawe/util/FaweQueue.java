@@ -15,9 +15,41 @@ public abstract class FaweQueue {
     
     public abstract void setChunk(FaweChunk<?> chunk);
     
+    /**
+     * Get the FaweChunk queued for a chunk (creating and queuing it if necessary)
+     * @param world
+     * @param x chunk x
+     * @param z chunk z
+     * @return
+     */
+    public abstract FaweChunk<?> getQueuedChunk(final String world, final int x, final int z);
+    
     public abstract boolean fixLighting(FaweChunk<?> chunk, boolean fixAll);
     
     public abstract boolean isChunkLoaded(String world, int x, int z);
+    
+    /**
+     * Get a copy of a loaded chunk section as combined ids: (id << 4) + data
+     * @param world
+     * @param cx chunk x
+     * @param cy section (0-15)
+     * @param cz chunk z
+     * @return the section copy (all air if the section is empty), or null if it can't be read
+     */
+    public char[] getCachedSection(final String world, final int cx, final int cy, final int cz) {
+        return null;
+    }
+    
+    /**
+     * Get which sections of a loaded chunk may contain blocks
+     * @param world
+     * @param cx chunk x
+     * @param cz chunk z
+     * @return a bitmask with bit n set if section n may contain blocks (0xFFFF if unknown)
+     */
+    public int getSectionMask(final String world, final int cx, final int cz) {
+        return 0xFFFF;
+    }
 
     /**
      * Gets the FaweChunk and sets the requested blocks
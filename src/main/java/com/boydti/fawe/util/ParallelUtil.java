@@ -0,0 +1,263 @@
+package com.boydti.fawe.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import com.boydti.fawe.config.Settings;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.function.RegionFunction;
+import com.sk89q.worldedit.function.RegionMaskingFilter;
+import com.sk89q.worldedit.function.block.BlockReplace;
+import com.sk89q.worldedit.function.mask.AbstractExtentMask;
+import com.sk89q.worldedit.function.mask.BlockMask;
+import com.sk89q.worldedit.function.mask.BoundedHeightMask;
+import com.sk89q.worldedit.function.mask.ExistingBlockMask;
+import com.sk89q.worldedit.function.mask.FuzzyBlockMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.MaskIntersection;
+import com.sk89q.worldedit.function.mask.MaskUnion;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.function.mask.RegionMask;
+import com.sk89q.worldedit.function.mask.SolidBlockMask;
+import com.sk89q.worldedit.function.pattern.BlockPattern;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.patterns.Pattern;
+import com.sk89q.worldedit.patterns.RandomFillPattern;
+import com.sk89q.worldedit.patterns.SingleBlockPattern;
+
+/**
+ * Splits an area into chunk aligned tiles which are processed on a fork join pool<br>
+ *  - Each chunk is only handled by one thread, so its queued FaweChunk is never shared<br>
+ *  - The number of threads is set by Settings.PARALLEL_THREADS (one per core by default, 1 disables parallel processing)<br>
+ *  - Edits themselves are run by EditExecutor; this pool only splits the work within an edit<br>
+ */
+public class ParallelUtil {
+
+    /**
+     * A task which is run once for each chunk
+     */
+    public interface ChunkTask {
+        void run(final int cx, final int cz) throws WorldEditException;
+    }
+
+    /**
+     * A task which is run once for each index
+     */
+    public interface IndexTask {
+        void run(final int index) throws WorldEditException;
+    }
+
+    private static ForkJoinPool POOL;
+
+    public static boolean isEnabled() {
+        return Settings.PARALLEL_THREADS > 1;
+    }
+
+    public static synchronized ForkJoinPool getPool() {
+        if (POOL == null) {
+            POOL = new ForkJoinPool(Math.max(1, Settings.PARALLEL_THREADS), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                    final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("FAWE-Parallel-" + (count++));
+                    return thread;
+                }
+            }, null, false);
+        }
+        return POOL;
+    }
+
+    /**
+     * Run a task for every chunk in the (inclusive) range, waiting for all of them to complete
+     * @param minCX
+     * @param minCZ
+     * @param maxCX
+     * @param maxCZ
+     * @param task
+     * @throws WorldEditException the first exception thrown by the task
+     */
+    public static void forEachChunk(final int minCX, final int minCZ, final int maxCX, final int maxCZ, final ChunkTask task) throws WorldEditException {
+        final int width = (maxCX - minCX) + 1;
+        final int length = (maxCZ - minCZ) + 1;
+        if ((width <= 0) || (length <= 0)) {
+            return;
+        }
+        forEach(width * length, new IndexTask() {
+            @Override
+            public void run(final int index) throws WorldEditException {
+                task.run(minCX + (index % width), minCZ + (index / width));
+            }
+        });
+    }
+
+    /**
+     * Run a task for every index from 0 (inclusive) to size (exclusive), waiting for all of them to complete
+     * @param size
+     * @param task
+     * @throws WorldEditException the first exception thrown by the task
+     */
+    public static void forEach(final int size, final IndexTask task) throws WorldEditException {
+        if (size <= 0) {
+            return;
+        }
+        try {
+            getPool().invoke(new TileAction(task, 0, size));
+        } catch (final TaskException e) {
+            throw e.cause;
+        }
+    }
+
+    /**
+     * If a pattern can be used by multiple threads at once
+     * @param pattern
+     * @return
+     */
+    @SuppressWarnings("deprecation")
+    public static boolean isThreadSafe(final Pattern pattern) {
+        final Class<?> clazz = pattern.getClass();
+        return (clazz == SingleBlockPattern.class) || (clazz == RandomFillPattern.class);
+    }
+
+    /**
+     * If a pattern can be used by multiple threads at once
+     * @param pattern
+     * @return
+     */
+    public static boolean isThreadSafe(final com.sk89q.worldedit.function.pattern.Pattern pattern) {
+        final Class<?> clazz = pattern.getClass();
+        return (clazz == BlockPattern.class) || (clazz == RandomPattern.class);
+    }
+
+    /**
+     * If a region function can be used by multiple threads at once<br>
+     *  - Only BlockReplace and RegionMaskingFilter, and only if everything they hold is (e.g. an EditSession which can parallelize)
+     * @param function
+     * @return
+     */
+    public static boolean isThreadSafe(final RegionFunction function) {
+        final Class<?> clazz = function.getClass();
+        if ((clazz != BlockReplace.class) && (clazz != RegionMaskingFilter.class)) {
+            return false;
+        }
+        try {
+            for (final Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                final Object value = field.get(function);
+                if (value instanceof EditSession) {
+                    if (!((EditSession) value).canParallelize()) {
+                        return false;
+                    }
+                } else if (value instanceof com.sk89q.worldedit.function.pattern.Pattern) {
+                    if (!isThreadSafe((com.sk89q.worldedit.function.pattern.Pattern) value)) {
+                        return false;
+                    }
+                } else if (value instanceof Mask) {
+                    if (!isThreadSafe((Mask) value)) {
+                        return false;
+                    }
+                } else if (value instanceof RegionFunction) {
+                    if (!isThreadSafe((RegionFunction) value)) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        } catch (final Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * If a mask can be used by multiple threads at once<br>
+     *  - Masks which read blocks from an EditSession are included, as it reads them from its section copies without locking
+     * @param mask
+     * @return
+     */
+    public static boolean isThreadSafe(final Mask mask) {
+        final Class<?> clazz = mask.getClass();
+        if ((clazz == ExistingBlockMask.class) || (clazz == BlockMask.class) || (clazz == FuzzyBlockMask.class) || (clazz == SolidBlockMask.class)) {
+            // Reading any other extent (e.g. the world) would need the main thread
+            return ((AbstractExtentMask) mask).getExtent() instanceof EditSession;
+        }
+        if ((clazz == BoundedHeightMask.class) || (clazz == RegionMask.class)) {
+            return true;
+        }
+        if ((clazz == MaskIntersection.class) || (clazz == MaskUnion.class)) {
+            for (final Mask child : ((MaskIntersection) mask).getMasks()) {
+                if (!isThreadSafe(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (clazz.getEnclosingClass() == Masks.class) {
+            // e.g. Masks.negate; only safe if every mask it wraps is
+            try {
+                for (final Field field : clazz.getDeclaredFields()) {
+                    if (Mask.class.isAssignableFrom(field.getType())) {
+                        field.setAccessible(true);
+                        final Mask child = (Mask) field.get(mask);
+                        if ((child == null) || !isThreadSafe(child)) {
+                            return false;
+                        }
+                    } else if (!field.getType().isPrimitive()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (final Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    private static class TaskException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final WorldEditException cause;
+
+        private TaskException(final WorldEditException cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+
+    private static class TileAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final IndexTask task;
+        private final int start;
+        private final int end;
+
+        private TileAction(final IndexTask task, final int start, final int end) {
+            this.task = task;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if ((end - start) > 1) {
+                final int mid = (start + end) >>> 1;
+                invokeAll(new TileAction(task, start, mid), new TileAction(task, mid, end));
+                return;
+            }
+            try {
+                task.run(start);
+            } catch (final WorldEditException e) {
+                throw new TaskException(e);
+            }
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.boydti.fawe.util;
 import java.lang.reflect.Field;
 import java.util.ArrayDeque;
 import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.boydti.fawe.bukkit.regions.FaweMask;
 import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.FaweLocation;
 import com.boydti.fawe.object.FawePlayer;
 import com.boydti.fawe.object.NullExtent;
 import com.boydti.fawe.object.RegionWrapper;
@@ -19,6 +23,8 @@ public class WEManager {
     
     public final ArrayDeque<FaweMaskManager> managers = new ArrayDeque<>();
     
+    private final ConcurrentHashMap<UUID, CachedMask> masks = new ConcurrentHashMap<>();
+    
     public void cancelEdit(Extent parent) {
         try {
             final Field field = AbstractDelegateExtent.class.getDeclaredField("extent");
@@ -40,11 +46,18 @@ public class WEManager {
     }
     
     public HashSet<RegionWrapper> getMask(final FawePlayer<?> player) {
-        final HashSet<RegionWrapper> regions = new HashSet<>();
         if (player.hasPermission("fawe.bypass")) {
+            final HashSet<RegionWrapper> regions = new HashSet<>();
             regions.add(new RegionWrapper(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE));
             return regions;
         }
+        final FaweLocation loc = player.getLocation();
+        final UUID uuid = player.getUUID();
+        final CachedMask cached = masks.get(uuid);
+        if ((cached != null) && cached.isValid(loc)) {
+            return cached.regions;
+        }
+        final HashSet<RegionWrapper> regions = new HashSet<>();
         for (final FaweMaskManager manager : managers) {
             if (player.hasPermission("fawe." + manager.getKey())) {
                 final FaweMask mask = manager.getMask(player);
@@ -53,9 +66,48 @@ public class WEManager {
                 }
             }
         }
+        if (Settings.MASK_CACHE_TTL > 0) {
+            final CachedMask mask = new CachedMask(regions, loc);
+            // A player outside their mask may be about to be added to the region they are in, so it isn't cached
+            if (mask.contains(loc)) {
+                masks.put(uuid, mask);
+            } else {
+                masks.remove(uuid);
+            }
+        }
         return regions;
     }
     
+    /**
+     * If a plugin provides masks (so its commands may change region membership)
+     * @param plugin the plugin name
+     * @return
+     */
+    public boolean isMaskPlugin(final String plugin) {
+        final String key = plugin.toLowerCase();
+        for (final FaweMaskManager manager : managers) {
+            if (manager.getKey().equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Remove the cached mask for a player (e.g. they changed world, or their region membership changed)
+     * @param uuid
+     */
+    public void invalidateMask(final UUID uuid) {
+        masks.remove(uuid);
+    }
+    
+    /**
+     * Remove all cached masks
+     */
+    public void invalidateMasks() {
+        masks.clear();
+    }
+    
     public boolean intersects(final RegionWrapper region1, final RegionWrapper region2) {
         return (region1.minX <= region2.maxX) && (region1.maxX >= region2.minX) && (region1.minZ <= region2.maxZ) && (region1.maxZ >= region2.minZ);
     }
@@ -127,4 +179,39 @@ public class WEManager {
         }
         return true;
     }
+    
+    /**
+     * A resolved mask the player was inside of, which is valid until:<br>
+     *  - The TTL expires<br>
+     *  - The player changes world<br>
+     *  - The player leaves the mask<br>
+     *  - A mask plugin's command is run (see MaskListener), as it may have changed region membership<br>
+     */
+    private static class CachedMask {
+        private final HashSet<RegionWrapper> regions;
+        private final String world;
+        private final long time;
+        
+        private CachedMask(final HashSet<RegionWrapper> regions, final FaweLocation loc) {
+            this.regions = regions;
+            this.world = loc.world;
+            this.time = System.currentTimeMillis();
+        }
+        
+        private boolean contains(final FaweLocation loc) {
+            for (final RegionWrapper region : regions) {
+                if (region.isIn(loc.x, loc.z)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private boolean isValid(final FaweLocation loc) {
+            if (((System.currentTimeMillis() - time) > Settings.MASK_CACHE_TTL) || !world.equals(loc.world)) {
+                return false;
+            }
+            return contains(loc);
+        }
+    }
 }
@@ -26,13 +26,15 @@ import static com.sk89q.worldedit.regions.Regions.maximumBlockY;
 import static com.sk89q.worldedit.regions.Regions.minimumBlockY;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,17 +43,38 @@ import javax.annotation.Nullable;
 import com.boydti.fawe.Fawe;
 import com.boydti.fawe.FaweCache;
 import com.boydti.fawe.config.BBC;
+import com.boydti.fawe.config.Settings;
+import com.boydti.fawe.object.BoxBitSet;
+import com.boydti.fawe.object.ChunkMask;
+import com.boydti.fawe.object.DiskStorageHistory;
 import com.boydti.fawe.object.EditSessionWrapper;
+import com.boydti.fawe.object.ExpressionPool;
 import com.boydti.fawe.object.FastWorldEditExtent;
+import com.boydti.fawe.object.FaweChangeSet;
+import com.boydti.fawe.object.FaweChangeSetExecutor;
+import com.boydti.fawe.object.FaweExtent;
 import com.boydti.fawe.object.FawePlayer;
+import com.boydti.fawe.object.FusedWEExtent;
+import com.boydti.fawe.object.HeightMapCache;
+import com.boydti.fawe.object.HistoryExtent;
 import com.boydti.fawe.object.NullExtent;
 import com.boydti.fawe.object.ProcessedWEExtent;
 import com.boydti.fawe.object.RegionWrapper;
+import com.boydti.fawe.object.ScanlineFill;
+import com.boydti.fawe.object.SectionMove;
+import com.boydti.fawe.object.SectionPattern;
+import com.boydti.fawe.object.SectionReplace;
+import com.boydti.fawe.object.SectionStack;
+import com.boydti.fawe.object.SectionVisitor;
+import com.boydti.fawe.util.DistributionUtil;
+import com.boydti.fawe.util.EditExecutor;
 import com.boydti.fawe.util.ExtentWrapper;
+import com.boydti.fawe.util.FaweQueue;
 import com.boydti.fawe.util.MemUtil;
+import com.boydti.fawe.util.ParallelUtil;
 import com.boydti.fawe.util.Perm;
 import com.boydti.fawe.util.SafeExtentWrapper;
-import com.boydti.fawe.util.TaskManager;
+import com.boydti.fawe.util.SetQueue;
 import com.boydti.fawe.util.WEManager;
 import com.sk89q.worldedit.blocks.BaseBlock;
 import com.sk89q.worldedit.blocks.BlockID;
@@ -71,17 +94,16 @@ import com.sk89q.worldedit.extent.inventory.BlockBag;
 import com.sk89q.worldedit.extent.reorder.MultiStageReorder;
 import com.sk89q.worldedit.extent.world.SurvivalModeExtent;
 import com.sk89q.worldedit.function.GroundFunction;
+import com.sk89q.worldedit.function.LayerFunction;
+import com.sk89q.worldedit.function.RegionFunction;
 import com.sk89q.worldedit.function.RegionMaskingFilter;
 import com.sk89q.worldedit.function.block.BlockReplace;
 import com.sk89q.worldedit.function.block.Naturalizer;
+import com.sk89q.worldedit.function.entity.ExtentEntityCopy;
 import com.sk89q.worldedit.function.generator.GardenPatchGenerator;
-import com.sk89q.worldedit.function.mask.BlockMask;
-import com.sk89q.worldedit.function.mask.BoundedHeightMask;
 import com.sk89q.worldedit.function.mask.ExistingBlockMask;
 import com.sk89q.worldedit.function.mask.FuzzyBlockMask;
 import com.sk89q.worldedit.function.mask.Mask;
-import com.sk89q.worldedit.function.mask.MaskIntersection;
-import com.sk89q.worldedit.function.mask.MaskUnion;
 import com.sk89q.worldedit.function.mask.Masks;
 import com.sk89q.worldedit.function.mask.NoiseFilter2D;
 import com.sk89q.worldedit.function.mask.RegionMask;
@@ -93,18 +115,14 @@ import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.function.pattern.BlockPattern;
 import com.sk89q.worldedit.function.pattern.Patterns;
 import com.sk89q.worldedit.function.util.RegionOffset;
-import com.sk89q.worldedit.function.visitor.DownwardVisitor;
+import com.sk89q.worldedit.function.visitor.EntityVisitor;
 import com.sk89q.worldedit.function.visitor.LayerVisitor;
-import com.sk89q.worldedit.function.visitor.NonRisingVisitor;
-import com.sk89q.worldedit.function.visitor.RecursiveVisitor;
 import com.sk89q.worldedit.function.visitor.RegionVisitor;
 import com.sk89q.worldedit.history.UndoContext;
 import com.sk89q.worldedit.history.change.BlockChange;
-import com.sk89q.worldedit.history.changeset.BlockOptimizedHistory;
 import com.sk89q.worldedit.history.changeset.ChangeSet;
 import com.sk89q.worldedit.internal.expression.Expression;
 import com.sk89q.worldedit.internal.expression.ExpressionException;
-import com.sk89q.worldedit.internal.expression.runtime.RValue;
 import com.sk89q.worldedit.math.interpolation.Interpolation;
 import com.sk89q.worldedit.math.interpolation.KochanekBartelsInterpolation;
 import com.sk89q.worldedit.math.interpolation.Node;
@@ -123,7 +141,6 @@ import com.sk89q.worldedit.regions.shape.RegionShape;
 import com.sk89q.worldedit.regions.shape.WorldEditExpressionEnvironment;
 import com.sk89q.worldedit.util.Countable;
 import com.sk89q.worldedit.util.TreeGenerator;
-import com.sk89q.worldedit.util.collection.DoubleArrayList;
 import com.sk89q.worldedit.util.eventbus.EventBus;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.biome.BaseBiome;
@@ -149,17 +166,19 @@ public class EditSession implements Extent {
     }
     
     protected final World world;
-    private final ChangeSet changeSet = new BlockOptimizedHistory();
+    private ChangeSet changeSet = new FaweChangeSet();
     private final EditSessionWrapper wrapper;
     private MultiStageReorder reorderExtent;
     private @Nullable Extent changeSetExtent;
     private MaskingExtent maskingExtent;
     private @Nullable ProcessedWEExtent processed;
+    private @Nullable FusedWEExtent fused;
     private final Extent bypassReorderHistory;
     private final Extent bypassHistory;
     private final Extent bypassNone;
     private boolean fastmode;
     private Mask oldMask;
+    private @Nullable String owner;
     
     public static BaseBiome nullBiome = new BaseBiome(0);
     public static BaseBlock nullBlock = new BaseBlock(0);
@@ -225,6 +244,7 @@ public class EditSession implements Extent {
             return;
         }
         Actor actor = event.getActor();
+        owner = actor == null ? null : actor.getName();
         
         // Not a player; bypass history
         if (actor == null || !actor.isPlayer()) {
@@ -243,9 +263,13 @@ public class EditSession implements Extent {
         String name = actor.getName();
         FawePlayer<Object> fp = FawePlayer.wrap(name);
         LocalSession session = fp.getSession();
+        if (Settings.STORE_HISTORY_ON_DISK) {
+            changeSet = new DiskStorageHistory(world.getName(), fp.getUUID());
+        }
         if (fastmode = session.hasFastMode()) {
             session.clearHistory();
         }
+        HashSet<RegionWrapper> mask = null;
         if (fp.hasWorldEditBypass()) {
             // Bypass skips processing and area restrictions
             extent = new FastWorldEditExtent(world, thread);
@@ -260,7 +284,7 @@ public class EditSession implements Extent {
                 return;
             }
         } else {
-            HashSet<RegionWrapper> mask = WEManager.IMP.getMask(fp);
+            mask = WEManager.IMP.getMask(fp);
             if (mask.size() == 0) {
                 if (Perm.hasPermission(fp, "fawe.admin")) {
                     BBC.WORLDEDIT_BYPASS.send(fp);
@@ -274,9 +298,9 @@ public class EditSession implements Extent {
                 bypassNone = extent;
                 return;
             }
-            // Process the WorldEdit action
-            extent = processed = new ProcessedWEExtent(world, thread, fp, mask, maxBlocks);
             if (hasFastMode()) {
+                // Process the WorldEdit action
+                extent = processed = new ProcessedWEExtent(world, thread, fp, mask, maxBlocks);
                 // Fastmode skips history, masking, and memory checks
                 extent = wrapExtent(extent, eventBus, event, Stage.BEFORE_CHANGE);
                 extent = wrapExtent(extent, eventBus, event, Stage.BEFORE_REORDER);
@@ -302,6 +326,18 @@ public class EditSession implements Extent {
                     return;
                 }
             }
+            if (wrapper.canFuseHistory() && !isWrapped(eventBus, event)) {
+                // No other plugin adds an extent, so limits, history, masking and memory checks can be done in a single stage
+                // (nothing would be reordered, so nothing is lost by skipping it)
+                final FusedWEExtent fusedExtent = new FusedWEExtent(world, thread, fp, mask, maxBlocks, changeSet);
+                processed = fused = fusedExtent;
+                this.bypassReorderHistory = fusedExtent.bypassHistory();
+                this.bypassHistory = bypassReorderHistory;
+                this.bypassNone = fusedExtent;
+                return;
+            }
+            // Process the WorldEdit action
+            extent = processed = new ProcessedWEExtent(world, thread, fp, mask, maxBlocks);
             // Perform memory checks after reorder
             extent = new SafeExtentWrapper(fp, extent);
             processed.setParent(extent);
@@ -335,6 +371,25 @@ public class EditSession implements Extent {
         return;
     }
     
+    /**
+     * Post each stage against a probe extent, to check if any other plugin wraps the extent
+     * (without building the extent chain it would wrap)
+     *
+     * @return true if an extent was added at any stage
+     */
+    private boolean isWrapped(final EventBus eventBus, final EditSessionEvent event) {
+        final Extent probe = new NullExtent();
+        for (final Stage stage : new Stage[] { Stage.BEFORE_CHANGE, Stage.BEFORE_REORDER, Stage.BEFORE_HISTORY }) {
+            final EditSessionEvent probeEvent = event.clone(stage);
+            probeEvent.setExtent(probe);
+            eventBus.post(probeEvent);
+            if (probeEvent.getExtent() != probe) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private Extent wrapExtent(final Extent extent, final EventBus eventBus, EditSessionEvent event, final Stage stage) {
         event = event.clone(stage);
         event.setExtent(extent);
@@ -433,6 +488,11 @@ public class EditSession implements Extent {
      * @param mask mask or null
      */
     public void setMask(final Mask mask) {
+        if (fused != null) {
+            oldMask = mask;
+            fused.setMask(mask);
+            return;
+        }
         if (maskingExtent == null) {
             return;
         }
@@ -492,6 +552,24 @@ public class EditSession implements Extent {
         return fastmode;
     }
     
+    /**
+     * Check if blocks can be set from multiple threads at once.
+     *
+     * <p>Only FAWE's own single stage extents are thread safe. Any reorder
+     * stage, third party extent or unknown mask will disable this.</p>
+     *
+     * @return true if operations can be processed in parallel
+     */
+    public boolean canParallelize() {
+        if (!ParallelUtil.isEnabled()) {
+            return false;
+        }
+        if (fused != null) {
+            return (bypassNone == fused) && ((fused.getMask() == null) || ParallelUtil.isThreadSafe(fused.getMask()));
+        }
+        return bypassNone instanceof FastWorldEditExtent;
+    }
+    
     /**
      * Get the {@link BlockBag} is used.
      *
@@ -544,15 +622,29 @@ public class EditSession implements Extent {
         return bypassNone.setBiome(position, biome);
     }
     
+    /**
+     * Get the state of a block from the edit's section copies, which doesn't need the main thread lock
+     * @param position
+     * @return the combined id (id << 4) + data, or -1 if the block must be read from the world
+     */
+    private int getSnapshot(final Vector position) {
+        if (fused == null) {
+            return -1;
+        }
+        return fused.getSnapshot(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+    }
+    
     @Override
     public BaseBlock getLazyBlock(final Vector position) {
-        synchronized (thread) {
-            return world.getBlock(position);
-        }
+        return getBlock(position);
     }
     
     @Override
-    public synchronized BaseBlock getBlock(final Vector position) {
+    public BaseBlock getBlock(final Vector position) {
+        final int combined = getSnapshot(position);
+        if (combined != -1) {
+            return new BaseBlock(combined >> 4, combined & 0xF);
+        }
         synchronized (thread) {
             return world.getBlock(position);
         }
@@ -566,7 +658,11 @@ public class EditSession implements Extent {
      * @deprecated Use {@link #getLazyBlock(Vector)} or {@link #getBlock(Vector)}
      */
     @Deprecated
-    public synchronized int getBlockType(final Vector position) {
+    public int getBlockType(final Vector position) {
+        final int combined = getSnapshot(position);
+        if (combined != -1) {
+            return combined >> 4;
+        }
         synchronized (thread) {
             return world.getBlockType(position);
         }
@@ -580,7 +676,11 @@ public class EditSession implements Extent {
      * @deprecated Use {@link #getLazyBlock(Vector)} or {@link #getBlock(Vector)}
      */
     @Deprecated
-    public synchronized int getBlockData(final Vector position) {
+    public int getBlockData(final Vector position) {
+        final int combined = getSnapshot(position);
+        if (combined != -1) {
+            return combined & 0xF;
+        }
         synchronized (thread) {
             return world.getBlockData(position);
         }
@@ -622,6 +722,12 @@ public class EditSession implements Extent {
      * @return height of highest block found or 'minY'
      */
     public int getHighestTerrainBlock(final int x, final int z, final int minY, final int maxY, final boolean naturalOnly) {
+        if (world != null) {
+            final int height = HeightMapCache.get(world.getName()).getHighestTerrainBlock(x, z, minY, maxY, naturalOnly);
+            if (height != Integer.MIN_VALUE) {
+                return height;
+            }
+        }
         return wrapper.getHighestTerrainBlock(x, z, minY, maxY, naturalOnly);
     }
     
@@ -689,6 +795,21 @@ public class EditSession implements Extent {
         }
     }
     
+    /**
+     * Set a block by its coordinates, without creating any objects if the extent chain allows it.
+     *
+     * @return whether the block changed
+     * @throws MaxChangedBlocksException thrown if too many blocks are changed
+     */
+    private boolean setBlock(final int x, final int y, final int z, final BaseBlock block) throws MaxChangedBlocksException {
+        final FaweExtent extent = block.hasNbtData() ? null : getFaweExtent();
+        if (extent == null) {
+            return setBlock(new Vector(x, y, z), block);
+        }
+        changes = -1;
+        return extent.setBlock(x, y, z, block.getType(), block.getData());
+    }
+    
     /**
      * Sets the block at a position, subject to both history and block re-ordering.
      *
@@ -775,16 +896,36 @@ public class EditSession implements Extent {
     public void undo(final EditSession editSession) {
         final UndoContext context = new UndoContext();
         context.setExtent(editSession.bypassHistory);
-        Operations.completeSmart(ChangeSetExecutor.createUndo(changeSet, context), new Runnable() {
+        Operations.completeSmart(createChangeSetExecutor(editSession, context, true), new Runnable() {
             @Override
             public void run() {
                 editSession.flushQueue();
             }
-        }, true);
+        }, true, editSession.owner);
         editSession.changes = 0;
         changes = 0;
     }
     
+    /**
+     * Get the operation to undo or redo this session's changes in another EditSession<br>
+     *  - A FaweChangeSet is applied a chunk at a time, unless it would exceed the block change limit
+     * @param editSession
+     * @param context
+     * @param undo
+     * @return
+     */
+    private Operation createChangeSetExecutor(final EditSession editSession, final UndoContext context, final boolean undo) {
+        if ((changeSet instanceof FaweChangeSet) && !(editSession.bypassHistory instanceof NullExtent)) {
+            final ProcessedWEExtent limit = editSession.processed;
+            // Only block changes count against the limit
+            if ((limit == null) || limit.reserve(((FaweChangeSet) changeSet).getBlockSize())) {
+                final ChunkMask mask = limit != null ? limit.getChunkMask() : null;
+                return new FaweChangeSetExecutor((FaweChangeSet) changeSet, undo, context, editSession.getWorld().getName(), mask);
+            }
+        }
+        return undo ? ChangeSetExecutor.createUndo(changeSet, context) : ChangeSetExecutor.createRedo(changeSet, context);
+    }
+    
     /**
      * Sets to new state.
      *
@@ -793,12 +934,12 @@ public class EditSession implements Extent {
     public void redo(final EditSession editSession) {
         final UndoContext context = new UndoContext();
         context.setExtent(editSession.bypassHistory);
-        Operations.completeSmart(ChangeSetExecutor.createRedo(changeSet, context), new Runnable() {
+        Operations.completeSmart(createChangeSetExecutor(editSession, context, false), new Runnable() {
             @Override
             public void run() {
                 editSession.flushQueue();
             }
-        }, true);
+        }, true, editSession.owner);
         editSession.changes = 0;
         changes = 0;
     }
@@ -836,10 +977,19 @@ public class EditSession implements Extent {
      * Finish off the queue.
      */
     public void flushQueue() {
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
                 Operations.completeBlindly(commit());
+                // Everything is queued, so the section copies used for history are no longer needed
+                if (fused != null) {
+                    fused.clearSnapshots();
+                } else if (changeSetExtent instanceof HistoryExtent) {
+                    ((HistoryExtent) changeSetExtent).clearSnapshots();
+                }
+                if (changeSet instanceof DiskStorageHistory) {
+                    ((DiskStorageHistory) changeSet).flush(owner);
+                }
             }
         });
     }
@@ -866,12 +1016,27 @@ public class EditSession implements Extent {
         return countBlock(region, ids);
     }
     
+    /**
+     * Get the number of each combined id ((id << 4) + data) in a region
+     * @param region
+     * @return
+     */
+    private int[] getHistogram(final Region region) {
+        try {
+            return DistributionUtil.getHistogram(this, region);
+        } catch (final WorldEditException e) {
+            throw new RuntimeException("Unexpected exception", e);
+        }
+    }
+    
     public int countBlock(final Region region, final boolean[] ids) {
+        final int[] histogram = getHistogram(region);
         int i = 0;
-        for (final Vector pt : region) {
-            final int id = getBlockType(pt);
+        for (int id = 0; id < ids.length; id++) {
             if (ids[id]) {
-                i++;
+                for (int data = 0; data < 16; data++) {
+                    i += histogram[(id << 4) + data];
+                }
             }
         }
         return i;
@@ -929,33 +1094,23 @@ public class EditSession implements Extent {
         checkArgument(radius >= 0, "radius >= 0");
         checkArgument(depth >= 1, "depth >= 1");
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
-                final MaskIntersection mask = new MaskIntersection(new RegionMask(new EllipsoidRegion(null, origin, new Vector(radius, radius, radius))), new BoundedHeightMask(Math.max(
-                (origin.getBlockY() - depth) + 1, 0), Math.min(getWorld().getMaxY(), origin.getBlockY())), Masks.negate(new ExistingBlockMask(EditSession.this)));
-                
-                // Want to replace blocks
-                final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
-                
-                // Pick how we're going to visit blocks
-                RecursiveVisitor visitor;
-                if (recursive) {
-                    visitor = new RecursiveVisitor(mask, replace);
-                } else {
-                    visitor = new DownwardVisitor(mask, replace, origin.getBlockY());
+                // Fill air, one run along x at a time
+                final ScanlineFill fill = new ScanlineFill(EditSession.this, new EllipsoidRegion(null, origin, new Vector(radius, radius, radius)), Math.max((origin.getBlockY() - depth) + 1, 0), Math.min(
+                getWorld().getMaxY(), origin.getBlockY()), ScanlineFill.getAllowed(BlockID.AIR), pattern, getFaweExtent());
+                if (!recursive) {
+                    fill.setUp(false);
+                    fill.setSpreadY(origin.getBlockY());
                 }
-                
-                // Start at the origin
-                visitor.visit(origin);
-                
-                // Execute
-                Operations.completeSmart(visitor, new Runnable() {
+                fill.visit(origin);
+                Operations.completeSmart(fill, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1051,17 +1206,27 @@ public class EditSession implements Extent {
         checkNotNull(region);
         checkNotNull(pattern);
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
-                final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
-                final RegionVisitor visitor = new RegionVisitor(region, replace);
+                final Operation visitor;
+                final SectionPattern sections = getSectionPattern(pattern);
+                if (sections != null) {
+                    final SectionVisitor sectionVisitor = new SectionVisitor(region, null, sections, getFaweExtent());
+                    sectionVisitor.setParallel(canParallelize());
+                    visitor = sectionVisitor;
+                } else {
+                    final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
+                    final RegionVisitor regionVisitor = new RegionVisitor(region, replace);
+                    regionVisitor.setParallel(canParallelize() && ParallelUtil.isThreadSafe(pattern));
+                    visitor = regionVisitor;
+                }
                 Operations.completeSmart(visitor, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1094,6 +1259,26 @@ public class EditSession implements Extent {
      */
     @SuppressWarnings("deprecation")
     public int replaceBlocks(final Region region, final Set<BaseBlock> filter, final Pattern pattern) throws MaxChangedBlocksException {
+        final FaweExtent extent = getFaweExtent(pattern);
+        final char[] table = (extent != null) && (getWorld() != null) ? SectionReplace.getTable(filter, ((SingleBlockPattern) pattern).getBlock()) : null;
+        if (table != null) {
+            checkNotNull(region);
+            EditExecutor.submit(owner, new Runnable() {
+                @Override
+                public void run() {
+                    // Remap ids through a lookup table, writing only the blocks that change
+                    final SectionReplace replace = new SectionReplace(EditSession.this, region, table, extent);
+                    replace.setParallel(canParallelize());
+                    Operations.completeSmart(replace, new Runnable() {
+                        @Override
+                        public void run() {
+                            EditSession.this.flushQueue();
+                        }
+                    }, true, owner);
+                }
+            });
+            return changes = -1;
+        }
         final Mask mask = filter == null ? new ExistingBlockMask(this) : new FuzzyBlockMask(this, filter);
         return replaceBlocks(region, mask, pattern);
     }
@@ -1114,18 +1299,28 @@ public class EditSession implements Extent {
         checkNotNull(mask);
         checkNotNull(pattern);
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
-                final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
-                final RegionMaskingFilter filter = new RegionMaskingFilter(mask, replace);
-                final RegionVisitor visitor = new RegionVisitor(region, filter);
+                final Operation visitor;
+                final SectionPattern sections = getSectionPattern(pattern);
+                if (sections != null) {
+                    final SectionVisitor sectionVisitor = new SectionVisitor(region, mask, sections, getFaweExtent());
+                    sectionVisitor.setParallel(canParallelize() && ParallelUtil.isThreadSafe(mask));
+                    visitor = sectionVisitor;
+                } else {
+                    final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
+                    final RegionMaskingFilter filter = new RegionMaskingFilter(mask, replace);
+                    final RegionVisitor regionVisitor = new RegionVisitor(region, filter);
+                    regionVisitor.setParallel(canParallelize() && ParallelUtil.isThreadSafe(pattern) && ParallelUtil.isThreadSafe(mask));
+                    visitor = regionVisitor;
+                }
                 Operations.completeSmart(visitor, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1303,19 +1498,36 @@ public class EditSession implements Extent {
         checkNotNull(region);
         checkNotNull(pattern);
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
-                final BlockReplace replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
+                final RegionFunction replace;
+                final SectionPattern sections = getSectionPattern(pattern);
+                if (sections != null) {
+                    final FaweExtent extent = getFaweExtent();
+                    replace = new RegionFunction() {
+                        @Override
+                        public boolean apply(final Vector position) throws WorldEditException {
+                            final int x = position.getBlockX();
+                            final int y = position.getBlockY();
+                            final int z = position.getBlockZ();
+                            final int combined = sections.get(x, y, z);
+                            return extent.setBlock(x, y, z, combined >> 4, combined & 15);
+                        }
+                    };
+                } else {
+                    replace = new BlockReplace(EditSession.this, Patterns.wrap(pattern));
+                }
                 final RegionOffset offset = new RegionOffset(new Vector(0, 1, 0), replace);
                 final GroundFunction ground = new GroundFunction(new ExistingBlockMask(EditSession.this), offset);
                 final LayerVisitor visitor = new LayerVisitor(asFlatRegion(region), minimumBlockY(region), maximumBlockY(region), ground);
+                visitor.setSkipEmptySections(world.getName());
                 Operations.completeSmart(visitor, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1332,19 +1544,29 @@ public class EditSession implements Extent {
     public int naturalizeCuboidBlocks(final Region region) throws MaxChangedBlocksException {
         checkNotNull(region);
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             
             @Override
             public void run() {
                 final Naturalizer naturalizer = new Naturalizer(EditSession.this);
                 final FlatRegion flatRegion = Regions.asFlatRegion(region);
                 final LayerVisitor visitor = new LayerVisitor(flatRegion, minimumBlockY(region), maximumBlockY(region), naturalizer);
+                visitor.setSkipEmptySections(world.getName());
+                if (canParallelize()) {
+                    // Naturalizer counts the blocks it changes, so each tile gets its own
+                    visitor.setParallel(new LayerVisitor.FunctionFactory() {
+                        @Override
+                        public LayerFunction create() {
+                            return new Naturalizer(EditSession.this);
+                        }
+                    });
+                }
                 Operations.completeSmart(visitor, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1365,11 +1587,29 @@ public class EditSession implements Extent {
         checkNotNull(dir);
         checkArgument(count >= 1, "count >= 1 required");
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
                 final Vector size = region.getMaximumPoint().subtract(region.getMinimumPoint()).add(1, 1, 1);
                 final Vector to = region.getMinimumPoint();
+                final FaweExtent extent = getFaweExtent();
+                if (extent != null) {
+                    // Read the region once, then stamp each copy (and its entities)
+                    final Vector step = dir.multiply(size);
+                    final List<Operation> operations = new ArrayList<Operation>();
+                    operations.add(new SectionStack(EditSession.this, extent, region, step, count, copyAir));
+                    for (int i = 1; i <= count; i++) {
+                        final ExtentEntityCopy entityCopy = new ExtentEntityCopy(to, EditSession.this, to, new AffineTransform().translate(step.multiply(i)));
+                        operations.add(new EntityVisitor(getEntities(region).iterator(), entityCopy));
+                    }
+                    Operations.completeSmart(new OperationQueue(operations), new Runnable() {
+                        @Override
+                        public void run() {
+                            EditSession.this.flushQueue();
+                        }
+                    }, true, owner);
+                    return;
+                }
                 final ForwardExtentCopy copy = new ForwardExtentCopy(EditSession.this, region, EditSession.this, to);
                 copy.setRepetitions(count);
                 copy.setTransform(new AffineTransform().translate(dir.multiply(size)));
@@ -1381,7 +1621,7 @@ public class EditSession implements Extent {
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1403,11 +1643,28 @@ public class EditSession implements Extent {
         checkNotNull(dir);
         checkArgument(distance >= 1, "distance >= 1 required");
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
                 final Vector to = region.getMinimumPoint();
                 
+                final FaweExtent extent = getFaweExtent();
+                if ((extent != null) && ((replacement == null) || !replacement.hasNbtData())) {
+                    // Move the blocks section by section, then the entities
+                    final Vector offset = dir.multiply(distance);
+                    final SectionMove move = new SectionMove(EditSession.this, extent, region, offset, copyAir, replacement != null ? replacement : new BaseBlock(BlockID.AIR));
+                    final ExtentEntityCopy entityCopy = new ExtentEntityCopy(to, EditSession.this, to, new AffineTransform().translate(offset));
+                    entityCopy.setRemoving(true);
+                    final EntityVisitor entities = new EntityVisitor(getEntities(region).iterator(), entityCopy);
+                    Operations.completeSmart(new OperationQueue(move, entities), new Runnable() {
+                        @Override
+                        public void run() {
+                            EditSession.this.flushQueue();
+                        }
+                    }, true, owner);
+                    return;
+                }
+                
                 // Remove the original blocks
                 final com.sk89q.worldedit.function.pattern.Pattern pattern = replacement != null ? new BlockPattern(replacement) : new BlockPattern(new BaseBlock(BlockID.AIR));
                 final BlockReplace remove = new BlockReplace(EditSession.this, pattern);
@@ -1432,7 +1689,7 @@ public class EditSession implements Extent {
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1465,28 +1722,31 @@ public class EditSession implements Extent {
         checkNotNull(origin);
         checkArgument(radius >= 0, "radius >= 0 required");
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
-                final MaskIntersection mask = new MaskIntersection(new BoundedHeightMask(0, getWorld().getMaxY()),
-                new RegionMask(new EllipsoidRegion(null, origin, new Vector(radius, radius, radius))), getWorld().createLiquidMask());
-                
-                final BlockReplace replace = new BlockReplace(EditSession.this, new BlockPattern(new BaseBlock(BlockID.AIR)));
-                final RecursiveVisitor visitor = new RecursiveVisitor(mask, replace);
+                // Remove the world's liquids, one run along x at a time
+                final Mask liquid = getWorld().createLiquidMask();
+                final boolean[] allowed = ScanlineFill.getAllowed(liquid);
+                final ScanlineFill fill = new ScanlineFill(EditSession.this, new EllipsoidRegion(null, origin, new Vector(radius, radius, radius)), 0, getWorld().getMaxY(), allowed,
+                new SingleBlockPattern(new BaseBlock(BlockID.AIR)), getFaweExtent());
+                if (allowed == null) {
+                    fill.setMask(liquid);
+                }
                 
                 // Around the origin in a 3x3 block
                 for (final BlockVector position : CuboidRegion.fromCenter(origin, 1)) {
-                    if (mask.test(position)) {
-                        visitor.visit(position);
+                    if (fill.test(position.getBlockX(), position.getBlockY(), position.getBlockZ())) {
+                        fill.visit(position);
                     }
                 }
                 
-                Operations.completeSmart(visitor, new Runnable() {
+                Operations.completeSmart(fill, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1506,36 +1766,31 @@ public class EditSession implements Extent {
         checkNotNull(origin);
         checkArgument(radius >= 0, "radius >= 0 required");
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             
             @Override
             public void run() {
-                // Our origins can only be liquids
-                final BlockMask liquidMask = new BlockMask(EditSession.this, new BaseBlock(moving, -1), new BaseBlock(stationary, -1));
-                
-                // But we will also visit air blocks
-                final MaskIntersection blockMask = new MaskUnion(liquidMask, new BlockMask(EditSession.this, new BaseBlock(BlockID.AIR)));
+                // Visit liquids and air, one run along x at a time
+                final boolean[] liquid = ScanlineFill.getAllowed(moving, stationary);
+                final boolean[] allowed = ScanlineFill.getAllowed(moving, stationary);
+                allowed[0] = true;
+                final ScanlineFill fill = new ScanlineFill(EditSession.this, new EllipsoidRegion(null, origin, new Vector(radius, radius, radius)), 0, Math.min(origin.getBlockY(), getWorld()
+                .getMaxY()), allowed, new SingleBlockPattern(new BaseBlock(stationary)), getFaweExtent());
+                fill.setUp(false);
                 
-                // There are boundaries that the routine needs to stay in
-                final MaskIntersection mask = new MaskIntersection(new BoundedHeightMask(0, Math.min(origin.getBlockY(), getWorld().getMaxY())), new RegionMask(new EllipsoidRegion(null, origin,
-                new Vector(radius, radius, radius))), blockMask);
-                
-                final BlockReplace replace = new BlockReplace(EditSession.this, new BlockPattern(new BaseBlock(stationary)));
-                final NonRisingVisitor visitor = new NonRisingVisitor(mask, replace);
-                
-                // Around the origin in a 3x3 block
+                // Around the origin in a 3x3 block, but only from liquids
                 for (final BlockVector position : CuboidRegion.fromCenter(origin, 1)) {
-                    if (liquidMask.test(position)) {
-                        visitor.visit(position);
+                    if (liquid[fill.getCombined(position.getBlockX(), position.getBlockY(), position.getBlockZ())]) {
+                        fill.visit(position);
                     }
                 }
                 
-                Operations.completeSmart(visitor, new Runnable() {
+                Operations.completeSmart(fill, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -1593,6 +1848,37 @@ public class EditSession implements Extent {
         final int ceilRadiusX = (int) Math.ceil(radiusX);
         final int ceilRadiusZ = (int) Math.ceil(radiusZ);
         
+        final FaweExtent faweExtent = getFaweExtent(block);
+        if (faweExtent != null) {
+            final BaseBlock base = ((SingleBlockPattern) block).getBlock();
+            final int id = base.getType();
+            final int data = base.getData();
+            final int cx = pos.getBlockX();
+            final int cy = pos.getBlockY();
+            final int cz = pos.getBlockZ();
+            // Largest x of each z row (-1 if empty)
+            final int[] spans = new int[ceilRadiusZ + 2];
+            for (int z = 0; z < spans.length; z++) {
+                spans[z] = getSpan(invRadiusX, 0, z * invRadiusZ, ceilRadiusX);
+            }
+            changes = -1;
+            for (int y = 0; y < height; ++y) {
+                for (int z = 0; z <= ceilRadiusZ; ++z) {
+                    final int maxX = spans[z];
+                    if (maxX < 0) {
+                        break;
+                    }
+                    // A block is inside the shell if the next block along each axis is part of the cylinder
+                    final int minX = filled ? 0 : Math.max(0, Math.min(maxX - 1, spans[z + 1]) + 1);
+                    affected += setSpans(faweExtent, cx, minX, maxX, cy + y, cz + z, id, data);
+                    if (z != 0) {
+                        affected += setSpans(faweExtent, cx, minX, maxX, cy + y, cz - z, id, data);
+                    }
+                }
+            }
+            return affected;
+        }
+        
         double nextXn = 0;
         forX: for (int x = 0; x <= ceilRadiusX; ++x) {
             final double xn = nextXn;
@@ -1677,6 +1963,45 @@ public class EditSession implements Extent {
         final int ceilRadiusY = (int) Math.ceil(radiusY);
         final int ceilRadiusZ = (int) Math.ceil(radiusZ);
         
+        final FaweExtent faweExtent = getFaweExtent(block);
+        if (faweExtent != null) {
+            final BaseBlock base = ((SingleBlockPattern) block).getBlock();
+            final int id = base.getType();
+            final int data = base.getData();
+            final int cx = pos.getBlockX();
+            final int cy = pos.getBlockY();
+            final int cz = pos.getBlockZ();
+            // Largest x of each (y, z) row (-1 if empty)
+            final int[][] spans = new int[ceilRadiusY + 2][ceilRadiusZ + 2];
+            for (int y = 0; y < spans.length; y++) {
+                for (int z = 0; z < spans[y].length; z++) {
+                    spans[y][z] = getSpan(invRadiusX, y * invRadiusY, z * invRadiusZ, ceilRadiusX);
+                }
+            }
+            changes = -1;
+            for (int y = 0; y <= ceilRadiusY; ++y) {
+                for (int z = 0; z <= ceilRadiusZ; ++z) {
+                    final int maxX = spans[y][z];
+                    if (maxX < 0) {
+                        break;
+                    }
+                    // A block is inside the shell if the next block along each axis is part of the sphere
+                    final int minX = filled ? 0 : Math.max(0, Math.min(maxX - 1, Math.min(spans[y + 1][z], spans[y][z + 1])) + 1);
+                    affected += setSpans(faweExtent, cx, minX, maxX, cy + y, cz + z, id, data);
+                    if (z != 0) {
+                        affected += setSpans(faweExtent, cx, minX, maxX, cy + y, cz - z, id, data);
+                    }
+                    if (y != 0) {
+                        affected += setSpans(faweExtent, cx, minX, maxX, cy - y, cz + z, id, data);
+                        if (z != 0) {
+                            affected += setSpans(faweExtent, cx, minX, maxX, cy - y, cz - z, id, data);
+                        }
+                    }
+                }
+            }
+            return affected;
+        }
+        
         double nextXn = 0;
         forX: for (int x = 0; x <= ceilRadiusX; ++x) {
             final double xn = nextXn;
@@ -1738,6 +2063,88 @@ public class EditSession implements Extent {
         return affected;
     }
     
+    /**
+     * Get the extent which blocks from a pattern can be set to without creating any objects.
+     *
+     * @param pattern the pattern
+     * @return the extent, or null if the pattern isn't a single block without NBT or the extent chain isn't FAWE's own
+     */
+    @SuppressWarnings("deprecation")
+    private @Nullable FaweExtent getFaweExtent(final Pattern pattern) {
+        if (!(pattern instanceof SingleBlockPattern) || ((SingleBlockPattern) pattern).getBlock().hasNbtData()) {
+            return null;
+        }
+        return getFaweExtent();
+    }
+    
+    /**
+     * Get the extent which blocks can be set to by id, if the extent chain is FAWE's own.
+     *
+     * @return the extent, or null
+     */
+    private @Nullable FaweExtent getFaweExtent() {
+        return bypassNone instanceof FaweExtent ? (FaweExtent) bypassNone : null;
+    }
+    
+    /**
+     * Get a pattern which fills whole sections at once, if the pattern and extent chain support it.
+     *
+     * @param pattern the pattern
+     * @return the section pattern, or null
+     */
+    private @Nullable SectionPattern getSectionPattern(final Pattern pattern) {
+        return getFaweExtent() == null ? null : SectionPattern.get(pattern);
+    }
+    
+    /**
+     * Get the largest x for which (x * invRadiusX, yn, zn) is within the unit sphere.
+     *
+     * @return the largest x (at most ceilRadiusX), or -1 if there is none
+     */
+    private int getSpan(final double invRadiusX, final double yn, final double zn, final int ceilRadiusX) {
+        final double remaining = 1 - (yn * yn) - (zn * zn);
+        if (remaining < 0) {
+            return -1;
+        }
+        int x = Math.min(ceilRadiusX, (int) (Math.sqrt(remaining) / invRadiusX));
+        // Correct any rounding so the result matches the per-block check
+        while ((x < ceilRadiusX) && (lengthSq((x + 1) * invRadiusX, yn, zn) <= 1)) {
+            x++;
+        }
+        while ((x >= 0) && (lengthSq(x * invRadiusX, yn, zn) > 1)) {
+            x--;
+        }
+        return x;
+    }
+    
+    /**
+     * Set the blocks from minX to maxX on both sides of the center x (the center is only set once).
+     *
+     * @return the number of blocks set
+     */
+    private int setSpans(final FaweExtent extent, final int centerX, final int minX, final int maxX, final int y, final int z, final int id, final int data) {
+        int affected = 0;
+        if (minX == 0) {
+            for (int x = centerX - maxX; x <= (centerX + maxX); x++) {
+                if (extent.setBlock(x, y, z, id, data)) {
+                    ++affected;
+                }
+            }
+            return affected;
+        }
+        for (int x = centerX - maxX; x <= (centerX - minX); x++) {
+            if (extent.setBlock(x, y, z, id, data)) {
+                ++affected;
+            }
+        }
+        for (int x = centerX + minX; x <= (centerX + maxX); x++) {
+            if (extent.setBlock(x, y, z, id, data)) {
+                ++affected;
+            }
+        }
+        return affected;
+    }
+    
     /**
      * Makes a pyramid.
      *
@@ -1789,53 +2196,35 @@ public class EditSession implements Extent {
      * @throws MaxChangedBlocksException thrown if too many blocks are changed
      */
     public int thaw(final Vector position, final double radius) throws MaxChangedBlocksException {
-        int affected = 0;
-        final double radiusSq = radius * radius;
-        
-        final int ox = position.getBlockX();
-        final int oy = position.getBlockY();
-        final int oz = position.getBlockZ();
-        
         final BaseBlock air = new BaseBlock(0);
         final BaseBlock water = new BaseBlock(BlockID.STATIONARY_WATER);
         
-        final int ceilRadius = (int) Math.ceil(radius);
-        for (int x = ox - ceilRadius; x <= (ox + ceilRadius); ++x) {
-            for (int z = oz - ceilRadius; z <= (oz + ceilRadius); ++z) {
-                if ((new Vector(x, oy, z)).distanceSq(position) > radiusSq) {
-                    continue;
-                }
-                
-                for (int y = world.getMaxY(); y >= 1; --y) {
-                    final Vector pt = new Vector(x, y, z);
-                    final int id = getBlockType(pt);
+        return scanColumns(position, radius, new ColumnScan() {
+            @Override
+            public boolean apply(final int x, final int y, final int z, final int id, final int data) throws MaxChangedBlocksException {
+                switch (id) {
+                    case BlockID.ICE:
+                        if (setBlock(x, y, z, water)) {
+                            ++affected;
+                        }
+                        break;
                     
-                    switch (id) {
-                        case BlockID.ICE:
-                            if (setBlock(pt, water)) {
-                                ++affected;
-                            }
-                            break;
-                        
-                        case BlockID.SNOW:
-                            if (setBlock(pt, air)) {
-                                ++affected;
-                            }
-                            break;
-                        
-                        case BlockID.AIR:
-                            continue;
-                            
-                        default:
-                            break;
-                    }
+                    case BlockID.SNOW:
+                        if (setBlock(x, y, z, air)) {
+                            ++affected;
+                        }
+                        break;
                     
-                    break;
+                    case BlockID.AIR:
+                        return false;
+                        
+                    default:
+                        break;
                 }
+                
+                return true;
             }
-        }
-        
-        return affected;
+        });
     }
     
     /**
@@ -1847,59 +2236,42 @@ public class EditSession implements Extent {
      * @throws MaxChangedBlocksException thrown if too many blocks are changed
      */
     public int simulateSnow(final Vector position, final double radius) throws MaxChangedBlocksException {
-        int affected = 0;
-        final double radiusSq = radius * radius;
-        
-        final int ox = position.getBlockX();
-        final int oy = position.getBlockY();
-        final int oz = position.getBlockZ();
-        
         final BaseBlock ice = new BaseBlock(BlockID.ICE);
         final BaseBlock snow = new BaseBlock(BlockID.SNOW);
+        final int maxY = world.getMaxY();
         
-        final int ceilRadius = (int) Math.ceil(radius);
-        for (int x = ox - ceilRadius; x <= (ox + ceilRadius); ++x) {
-            for (int z = oz - ceilRadius; z <= (oz + ceilRadius); ++z) {
-                if ((new Vector(x, oy, z)).distanceSq(position) > radiusSq) {
-                    continue;
+        return scanColumns(position, radius, new ColumnScan() {
+            @Override
+            public boolean apply(final int x, final int y, final int z, final int id, final int data) throws MaxChangedBlocksException {
+                if (id == BlockID.AIR) {
+                    return false;
                 }
                 
-                for (int y = world.getMaxY(); y >= 1; --y) {
-                    final Vector pt = new Vector(x, y, z);
-                    final int id = getBlockType(pt);
-                    
-                    if (id == BlockID.AIR) {
-                        continue;
-                    }
-                    
-                    // Ice!
-                    if ((id == BlockID.WATER) || (id == BlockID.STATIONARY_WATER)) {
-                        if (setBlock(pt, ice)) {
-                            ++affected;
-                        }
-                        break;
-                    }
-                    
-                    // Snow should not cover these blocks
-                    if (BlockType.isTranslucent(id)) {
-                        break;
-                    }
-                    
-                    // Too high?
-                    if (y == world.getMaxY()) {
-                        break;
-                    }
-                    
-                    // add snow cover
-                    if (setBlock(pt.add(0, 1, 0), snow)) {
+                // Ice!
+                if ((id == BlockID.WATER) || (id == BlockID.STATIONARY_WATER)) {
+                    if (setBlock(x, y, z, ice)) {
                         ++affected;
                     }
-                    break;
+                    return true;
                 }
+                
+                // Snow should not cover these blocks
+                if (BlockType.isTranslucent(id)) {
+                    return true;
+                }
+                
+                // Too high?
+                if (y == maxY) {
+                    return true;
+                }
+                
+                // add snow cover
+                if (setBlock(x, y + 1, z, snow)) {
+                    ++affected;
+                }
+                return true;
             }
-        }
-        
-        return affected;
+        });
     }
     
     /**
@@ -1926,56 +2298,121 @@ public class EditSession implements Extent {
      * @throws MaxChangedBlocksException thrown if too many blocks are changed
      */
     public int green(final Vector position, final double radius, final boolean onlyNormalDirt) throws MaxChangedBlocksException {
-        int affected = 0;
+        final BaseBlock grass = new BaseBlock(BlockID.GRASS);
+        
+        return scanColumns(position, radius, new ColumnScan() {
+            @Override
+            public boolean apply(final int x, final int y, final int z, final int id, final int data) throws MaxChangedBlocksException {
+                switch (id) {
+                    case BlockID.DIRT:
+                        if (onlyNormalDirt && (data != 0)) {
+                            return true;
+                        }
+                        
+                        if (setBlock(x, y, z, grass)) {
+                            ++affected;
+                        }
+                        return true;
+                    
+                    case BlockID.WATER:
+                    case BlockID.STATIONARY_WATER:
+                    case BlockID.LAVA:
+                    case BlockID.STATIONARY_LAVA:
+                        // break on liquids...
+                        return true;
+                    
+                    default:
+                        // ...and all non-passable blocks
+                        return !BlockType.canPassThrough(id, data);
+                }
+            }
+        });
+    }
+    
+    /**
+     * A function applied to the blocks of a column, from the top down.
+     */
+    private static abstract class ColumnScan {
+        protected int affected;
+        
+        /**
+         * @return true to stop scanning the column
+         */
+        public abstract boolean apply(final int x, final int y, final int z, final int id, final int data) throws MaxChangedBlocksException;
+    }
+    
+    /**
+     * Scan each column within a radius from world.getMaxY() down to 1.<br>
+     * Empty sections are skipped (their blocks are all air), and blocks are read from the queue's section snapshots.
+     *
+     * @return the number of blocks affected by the scan
+     */
+    private int scanColumns(final Vector position, final double radius, final ColumnScan scan) throws MaxChangedBlocksException {
         final double radiusSq = radius * radius;
         
         final int ox = position.getBlockX();
         final int oy = position.getBlockY();
         final int oz = position.getBlockZ();
+        final double dy = oy - position.getY();
         
-        final BaseBlock grass = new BaseBlock(BlockID.GRASS);
+        final int maxY = Math.min(255, world.getMaxY());
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final String worldName = world.getName();
         
         final int ceilRadius = (int) Math.ceil(radius);
-        for (int x = ox - ceilRadius; x <= (ox + ceilRadius); ++x) {
-            for (int z = oz - ceilRadius; z <= (oz + ceilRadius); ++z) {
-                if ((new Vector(x, oy, z)).distanceSq(position) > radiusSq) {
-                    continue;
-                }
-                
-                loop: for (int y = world.getMaxY(); y >= 1; --y) {
-                    final Vector pt = new Vector(x, y, z);
-                    final int id = getBlockType(pt);
-                    final int data = getBlockData(pt);
-                    
-                    switch (id) {
-                        case BlockID.DIRT:
-                            if (onlyNormalDirt && (data != 0)) {
-                                break loop;
+        final int minX = ox - ceilRadius;
+        final int maxX = ox + ceilRadius;
+        final int minZ = oz - ceilRadius;
+        final int maxZ = oz + ceilRadius;
+        for (int cx = minX >> 4; cx <= (maxX >> 4); cx++) {
+            for (int cz = minZ >> 4; cz <= (maxZ >> 4); cz++) {
+                final int sections = queue.getSectionMask(worldName, cx, cz);
+                final char[][] ids = new char[16][];
+                final boolean[] read = new boolean[16];
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                for (int x = bx; x <= tx; ++x) {
+                    for (int z = bz; z <= tz; ++z) {
+                        final double dx = x - position.getX();
+                        final double dz = z - position.getZ();
+                        if (((dx * dx) + (dy * dy) + (dz * dz)) > radiusSq) {
+                            continue;
+                        }
+                        
+                        for (int y = maxY; y >= 1; --y) {
+                            final int cy = y >> 4;
+                            if (((sections >> cy) & 1) == 0) {
+                                // Skip to the section below
+                                y = cy << 4;
+                                continue;
                             }
-                            
-                            if (setBlock(pt, grass)) {
-                                ++affected;
+                            if (!read[cy]) {
+                                ids[cy] = queue.getCachedSection(worldName, cx, cy, cz);
+                                read[cy] = true;
                             }
-                            break loop;
-                        
-                        case BlockID.WATER:
-                        case BlockID.STATIONARY_WATER:
-                        case BlockID.LAVA:
-                        case BlockID.STATIONARY_LAVA:
-                            // break on liquids...
-                            break loop;
-                        
-                        default:
-                            // ...and all non-passable blocks
-                            if (!BlockType.canPassThrough(id, data)) {
-                                break loop;
+                            final int id;
+                            final int data;
+                            if (ids[cy] != null) {
+                                final int combined = ids[cy][FaweCache.CACHE_J[y][x & 15][z & 15]];
+                                id = combined >> 4;
+                                data = combined & 15;
+                            } else {
+                                final Vector pt = new Vector(x, y, z);
+                                id = getBlockType(pt);
+                                data = getBlockData(pt);
                             }
+                            if (scan.apply(x, y, z, id, data)) {
+                                break;
+                            }
+                        }
                     }
                 }
             }
         }
         
-        return affected;
+        return scan.affected;
     }
     
     /**
@@ -1988,7 +2425,7 @@ public class EditSession implements Extent {
      */
     public int makePumpkinPatches(final Vector position, final int apothem) throws MaxChangedBlocksException {
         
-        TaskManager.IMP.async(new Runnable() {
+        EditExecutor.submit(owner, new Runnable() {
             @Override
             public void run() {
                 // We want to generate pumpkins
@@ -2002,13 +2439,14 @@ public class EditSession implements Extent {
                 
                 final GroundFunction ground = new GroundFunction(new ExistingBlockMask(EditSession.this), generator);
                 final LayerVisitor visitor = new LayerVisitor(region, minimumBlockY(region), maximumBlockY(region), ground);
+                visitor.setSkipEmptySections(world.getName());
                 visitor.setMask(new NoiseFilter2D(new RandomNoise(), density));
                 Operations.completeSmart(visitor, new Runnable() {
                     @Override
                     public void run() {
                         EditSession.this.flushQueue();
                     }
-                }, true);
+                }, true, owner);
             }
         });
         return changes = -1;
@@ -2061,47 +2499,15 @@ public class EditSession implements Extent {
      */
     public List<Countable<Integer>> getBlockDistribution(final Region region) {
         final List<Countable<Integer>> distribution = new ArrayList<Countable<Integer>>();
-        final Map<Integer, Countable<Integer>> map = new HashMap<Integer, Countable<Integer>>();
+        final int[] histogram = getHistogram(region);
         
-        if (region instanceof CuboidRegion) {
-            // Doing this for speed
-            final Vector min = region.getMinimumPoint();
-            final Vector max = region.getMaximumPoint();
-            
-            final int minX = min.getBlockX();
-            final int minY = min.getBlockY();
-            final int minZ = min.getBlockZ();
-            final int maxX = max.getBlockX();
-            final int maxY = max.getBlockY();
-            final int maxZ = max.getBlockZ();
-            
-            for (int x = minX; x <= maxX; ++x) {
-                for (int y = minY; y <= maxY; ++y) {
-                    for (int z = minZ; z <= maxZ; ++z) {
-                        final Vector pt = new Vector(x, y, z);
-                        
-                        final int id = getBlockType(pt);
-                        
-                        if (map.containsKey(id)) {
-                            map.get(id).increment();
-                        } else {
-                            final Countable<Integer> c = new Countable<Integer>(id, 1);
-                            map.put(id, c);
-                            distribution.add(c);
-                        }
-                    }
-                }
+        for (int id = 0; id < 4096; id++) {
+            int count = 0;
+            for (int data = 0; data < 16; data++) {
+                count += histogram[(id << 4) + data];
             }
-        } else {
-            for (final Vector pt : region) {
-                final int id = getBlockType(pt);
-                
-                if (map.containsKey(id)) {
-                    map.get(id).increment();
-                } else {
-                    final Countable<Integer> c = new Countable<Integer>(id, 1);
-                    map.put(id, c);
-                }
+            if (count != 0) {
+                distribution.add(new Countable<Integer>(id, count));
             }
         }
         
@@ -2119,47 +2525,12 @@ public class EditSession implements Extent {
      */
     public List<Countable<BaseBlock>> getBlockDistributionWithData(final Region region) {
         final List<Countable<BaseBlock>> distribution = new ArrayList<Countable<BaseBlock>>();
-        final Map<BaseBlock, Countable<BaseBlock>> map = new HashMap<BaseBlock, Countable<BaseBlock>>();
+        final int[] histogram = getHistogram(region);
         
-        if (region instanceof CuboidRegion) {
-            // Doing this for speed
-            final Vector min = region.getMinimumPoint();
-            final Vector max = region.getMaximumPoint();
-            
-            final int minX = min.getBlockX();
-            final int minY = min.getBlockY();
-            final int minZ = min.getBlockZ();
-            final int maxX = max.getBlockX();
-            final int maxY = max.getBlockY();
-            final int maxZ = max.getBlockZ();
-            
-            for (int x = minX; x <= maxX; ++x) {
-                for (int y = minY; y <= maxY; ++y) {
-                    for (int z = minZ; z <= maxZ; ++z) {
-                        final Vector pt = new Vector(x, y, z);
-                        
-                        final BaseBlock blk = new BaseBlock(getBlockType(pt), getBlockData(pt));
-                        
-                        if (map.containsKey(blk)) {
-                            map.get(blk).increment();
-                        } else {
-                            final Countable<BaseBlock> c = new Countable<BaseBlock>(blk, 1);
-                            map.put(blk, c);
-                            distribution.add(c);
-                        }
-                    }
-                }
-            }
-        } else {
-            for (final Vector pt : region) {
-                final BaseBlock blk = new BaseBlock(getBlockType(pt), getBlockData(pt));
-                
-                if (map.containsKey(blk)) {
-                    map.get(blk).increment();
-                } else {
-                    final Countable<BaseBlock> c = new Countable<BaseBlock>(blk, 1);
-                    map.put(blk, c);
-                }
+        for (int combined = 0; combined < histogram.length; combined++) {
+            final int count = histogram[combined];
+            if (count != 0) {
+                distribution.add(new Countable<BaseBlock>(new BaseBlock(combined >> 4, combined & 15), count));
             }
         }
         
@@ -2171,79 +2542,357 @@ public class EditSession implements Extent {
     
     public int makeShape(final Region region, final Vector zero, final Vector unit, final Pattern pattern, final String expressionString, final boolean hollow) throws ExpressionException,
     MaxChangedBlocksException {
-        final Expression expression = Expression.compile(expressionString, "x", "y", "z", "type", "data");
-        expression.optimize();
-        
-        final RValue typeVariable = expression.getVariable("type", false);
-        final RValue dataVariable = expression.getVariable("data", false);
+        final ExpressionPool expressions = new ExpressionPool(this, unit, zero, expressionString, new String[] { "x", "y", "z", "type", "data" }, "type", "data");
         
-        final WorldEditExpressionEnvironment environment = new WorldEditExpressionEnvironment(this, unit, zero);
-        expression.setEnvironment(environment);
+        final FaweExtent extent = getFaweExtent();
+        if (!canParallelize() || (extent == null) || !ParallelUtil.isThreadSafe(pattern)) {
+            final ExpressionPool.Instance instance = expressions.take();
+            final ArbitraryShape shape = new ArbitraryShape(region) {
+                @Override
+                protected BaseBlock getMaterial(final int x, final int y, final int z, final BaseBlock defaultMaterial) {
+                    return getShapeMaterial(instance, zero, unit, x, y, z, defaultMaterial);
+                }
+            };
+            
+            return shape.generate(this, pattern, hollow);
+        }
         
-        final ArbitraryShape shape = new ArbitraryShape(region) {
+        // Evaluate chunk aligned tiles in parallel, each thread with its own copy of the expression
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = min.getBlockY();
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = max.getBlockY();
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        final AtomicInteger affected = new AtomicInteger();
+        forEachChunk(true, minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, new ParallelUtil.ChunkTask() {
             @Override
-            protected BaseBlock getMaterial(final int x, final int y, final int z, final BaseBlock defaultMaterial) {
-                final Vector current = new Vector(x, y, z);
-                environment.setCurrentBlock(current);
-                final Vector scaled = current.subtract(zero).divide(unit);
-                
+            public void run(final int cx, final int cz) throws WorldEditException {
+                final ExpressionPool.Instance instance = expressions.take();
                 try {
-                    if (expression.evaluate(scaled.getX(), scaled.getY(), scaled.getZ(), defaultMaterial.getType(), defaultMaterial.getData()) <= 0) {
-                        return null;
+                    final int bx = Math.max(minX, cx << 4);
+                    final int bz = Math.max(minZ, cz << 4);
+                    final int tx = Math.min(maxX, (cx << 4) + 15);
+                    final int tz = Math.min(maxZ, (cz << 4) + 15);
+                    // For hollow shapes, the tile has a 1 block border so its edges can be checked.
+                    // Cells are evaluated lazily: 0 if not yet evaluated, -1 if outside the shape, otherwise the combined id + 1
+                    final int sizeX = (tx - bx) + 3;
+                    final int sizeZ = (tz - bz) + 3;
+                    final int sizeY = (maxY - minY) + 3;
+                    final int[] cells = hollow ? new int[sizeX * sizeY * sizeZ] : null;
+                    final int layer = sizeX * sizeZ;
+                    for (int y = minY; y <= maxY; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    continue;
+                                }
+                                final int combined;
+                                if (hollow) {
+                                    final int index = ((((y - minY) + 1) * sizeZ) + ((z - bz) + 1)) * sizeX + ((x - bx) + 1);
+                                    combined = getShapeCell(instance, cells, index, x, y, z);
+                                    // Only draw blocks with a neighbour outside the shape
+                                    if ((combined == -1) || ((getShapeCell(instance, cells, index - 1, x - 1, y, z) != -1) && (getShapeCell(instance, cells, index + 1, x + 1, y, z) != -1)
+                                    && (getShapeCell(instance, cells, index - sizeX, x, y, z - 1) != -1) && (getShapeCell(instance, cells, index + sizeX, x, y, z + 1) != -1)
+                                    && (getShapeCell(instance, cells, index - layer, x, y - 1, z) != -1) && (getShapeCell(instance, cells, index + layer, x, y + 1, z) != -1))) {
+                                        continue;
+                                    }
+                                } else {
+                                    combined = getShapeCombined(instance, zero, unit, x, y, z, pattern.next(x, y, z));
+                                    if (combined == -1) {
+                                        continue;
+                                    }
+                                }
+                                if (extent.setBlock(x, y, z, combined >> 4, combined & 15)) {
+                                    affected.incrementAndGet();
+                                }
+                            }
+                        }
                     }
-                    
-                    return new BaseBlock((int) typeVariable.getValue(), (int) dataVariable.getValue());
-                } catch (final Exception e) {
-                    log.log(Level.WARNING, "Failed to create shape", e);
-                    return null;
+                } finally {
+                    expressions.release(instance);
                 }
             }
-        };
-        
-        return shape.generate(this, pattern, hollow);
+            
+            private int getShapeCell(final ExpressionPool.Instance instance, final int[] cells, final int index, final int x, final int y, final int z) {
+                final int cell = cells[index];
+                if (cell != 0) {
+                    return cell == -1 ? -1 : cell - 1;
+                }
+                final int combined = getShapeCombined(instance, zero, unit, x, y, z, pattern.next(x, y, z));
+                cells[index] = combined == -1 ? -1 : combined + 1;
+                return combined;
+            }
+        });
+        return affected.get();
+    }
+    
+    /**
+     * Get the material of a shape at a position (as ArbitraryShape#getMaterial).
+     *
+     * @return the material, or null if the position is outside the shape
+     */
+    private @Nullable BaseBlock getShapeMaterial(final ExpressionPool.Instance instance, final Vector zero, final Vector unit, final int x, final int y, final int z, final BaseBlock defaultMaterial) {
+        final int combined = getShapeCombined(instance, zero, unit, x, y, z, defaultMaterial);
+        return combined == -1 ? null : new BaseBlock(combined >> 4, combined & 15);
+    }
+    
+    /**
+     * Get the material of a shape at a position, as a combined id.
+     *
+     * @return (id << 4) + data, or -1 if the position is outside the shape
+     */
+    private int getShapeCombined(final ExpressionPool.Instance instance, final Vector zero, final Vector unit, final int x, final int y, final int z, final BaseBlock defaultMaterial) {
+        instance.environment.setCurrentBlock(new Vector(x, y, z));
+        try {
+            if (instance.expression.evaluate((x - zero.getX()) / unit.getX(), (y - zero.getY()) / unit.getY(), (z - zero.getZ()) / unit.getZ(), defaultMaterial.getType(), defaultMaterial.getData()) <= 0) {
+                return -1;
+            }
+            
+            return (((int) instance.outputs[0].getValue()) << 4) + (((int) instance.outputs[1].getValue()) & 15);
+        } catch (final Exception e) {
+            log.log(Level.WARNING, "Failed to create shape", e);
+            return -1;
+        }
     }
     
     public int deformRegion(final Region region, final Vector zero, final Vector unit, final String expressionString) throws ExpressionException, MaxChangedBlocksException {
-        final Expression expression = Expression.compile(expressionString, "x", "y", "z");
-        expression.optimize();
+        final ExpressionPool expressions = new ExpressionPool(this, unit, zero, expressionString, new String[] { "x", "y", "z" }, "x", "y", "z");
+        
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = min.getBlockY();
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = max.getBlockY();
+        final int maxZ = max.getBlockZ();
+        final int minCX = minX >> 4;
+        final int minCZ = minZ >> 4;
+        final int maxCX = maxX >> 4;
+        final int maxCZ = maxZ >> 4;
+        final int width = (maxCX - minCX) + 1;
+        final int tiles = width * ((maxCZ - minCZ) + 1);
+        final boolean cuboid = region instanceof CuboidRegion;
+        final FaweExtent extent = getFaweExtent();
+        final boolean parallel = canParallelize() && (extent != null);
+        final AtomicReference<ExpressionException> error = new AtomicReference<>();
+        
+        // The chunks each tile reads from, as minCX, minCZ, maxCX, maxCZ (null if the tile reads nothing)
+        final int[][] reads = new int[tiles][];
+        forEachChunk(parallel, minCX, minCZ, maxCX, maxCZ, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (error.get() != null) {
+                    return;
+                }
+                final ExpressionPool.Instance instance = expressions.take();
+                try {
+                    final int bx = Math.max(minX, cx << 4);
+                    final int bz = Math.max(minZ, cz << 4);
+                    final int tx = Math.min(maxX, (cx << 4) + 15);
+                    final int tz = Math.min(maxZ, (cz << 4) + 15);
+                    final int[] source = new int[3];
+                    int[] box = null;
+                    for (int y = minY; y <= maxY; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    continue;
+                                }
+                                getDeformSource(instance, zero, unit, x, y, z, source);
+                                final int scx = source[0] >> 4;
+                                final int scz = source[2] >> 4;
+                                if (box == null) {
+                                    box = new int[] { scx, scz, scx, scz };
+                                } else {
+                                    box[0] = Math.min(box[0], scx);
+                                    box[1] = Math.min(box[1], scz);
+                                    box[2] = Math.max(box[2], scx);
+                                    box[3] = Math.max(box[3], scz);
+                                }
+                            }
+                        }
+                    }
+                    reads[(cx - minCX) + ((cz - minCZ) * width)] = box;
+                } catch (final ExpressionException e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    expressions.release(instance);
+                }
+            }
+        });
+        if (error.get() != null) {
+            throw error.get();
+        }
         
-        final RValue x = expression.getVariable("x", false);
-        final RValue y = expression.getVariable("y", false);
-        final RValue z = expression.getVariable("z", false);
+        // A tile which no other tile reads from can be read and written in one go.
+        // The rest have every source read before any of them is written.
+        final boolean[] shared = new boolean[tiles];
+        for (int i = 0; i < tiles; i++) {
+            final int[] box = reads[i];
+            if (box == null) {
+                continue;
+            }
+            for (int cz = Math.max(minCZ, box[1]); cz <= Math.min(maxCZ, box[3]); cz++) {
+                for (int cx = Math.max(minCX, box[0]); cx <= Math.min(maxCX, box[2]); cx++) {
+                    final int j = (cx - minCX) + ((cz - minCZ) * width);
+                    if (j != i) {
+                        shared[j] = true;
+                    }
+                }
+            }
+        }
         
-        final WorldEditExpressionEnvironment environment = new WorldEditExpressionEnvironment(this, unit, zero);
-        expression.setEnvironment(environment);
+        // The source of each block is stored as (id << 4) + data per chunk tile, in y, z, x order (Character.MAX_VALUE if outside the region)
+        final char[][] sources = new char[tiles][];
+        final ParallelUtil.ChunkTask read = new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (error.get() != null) {
+                    return;
+                }
+                final ExpressionPool.Instance instance = expressions.take();
+                try {
+                    final int bx = Math.max(minX, cx << 4);
+                    final int bz = Math.max(minZ, cz << 4);
+                    final int tx = Math.min(maxX, (cx << 4) + 15);
+                    final int tz = Math.min(maxZ, (cz << 4) + 15);
+                    final char[] ids = new char[((tx - bx) + 1) * ((tz - bz) + 1) * ((maxY - minY) + 1)];
+                    final int[] source = new int[3];
+                    int i = 0;
+                    for (int y = minY; y <= maxY; y++) {
+                        for (int z = bz; z <= tz; z++) {
+                            for (int x = bx; x <= tx; x++) {
+                                if (!cuboid && !region.contains(new Vector(x, y, z))) {
+                                    ids[i++] = Character.MAX_VALUE;
+                                    continue;
+                                }
+                                getDeformSource(instance, zero, unit, x, y, z, source);
+                                ids[i++] = (char) getDeformBlock(source[0], source[1], source[2]);
+                            }
+                        }
+                    }
+                    sources[(cx - minCX) + ((cz - minCZ) * width)] = ids;
+                } catch (final ExpressionException e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    expressions.release(instance);
+                }
+            }
+        };
         
-        final DoubleArrayList<BlockVector, BaseBlock> queue = new DoubleArrayList<BlockVector, BaseBlock>(false);
+        final AtomicInteger affected = new AtomicInteger();
+        final ParallelUtil.ChunkTask write = new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                final int index = (cx - minCX) + ((cz - minCZ) * width);
+                final char[] ids = sources[index];
+                if (ids == null) {
+                    return;
+                }
+                sources[index] = null;
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                int i = 0;
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = bz; z <= tz; z++) {
+                        for (int x = bx; x <= tx; x++) {
+                            final char combined = ids[i++];
+                            if (combined == Character.MAX_VALUE) {
+                                continue;
+                            }
+                            // set at new position
+                            final boolean set = extent != null ? extent.setBlock(x, y, z, combined >> 4, combined & 15) : setBlock(new Vector(x, y, z), new BaseBlock(combined >> 4, combined & 15));
+                            if (set) {
+                                affected.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            }
+        };
         
-        for (final BlockVector position : region) {
-            // offset, scale
-            final Vector scaled = position.subtract(zero).divide(unit);
-            
-            // transform
-            expression.evaluate(scaled.getX(), scaled.getY(), scaled.getZ());
-            
-            final BlockVector sourcePosition = environment.toWorld(x.getValue(), y.getValue(), z.getValue());
-            
-            // read block from world
-            final BaseBlock material = new BaseBlock(world.getBlockType(sourcePosition), world.getBlockData(sourcePosition));
-            
-            // queue operation
-            queue.put(position, material);
+        forEachChunk(parallel, minCX, minCZ, maxCX, maxCZ, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (!shared[(cx - minCX) + ((cz - minCZ) * width)]) {
+                    read.run(cx, cz);
+                    write.run(cx, cz);
+                }
+            }
+        });
+        forEachChunk(parallel, minCX, minCZ, maxCX, maxCZ, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (shared[(cx - minCX) + ((cz - minCZ) * width)]) {
+                    read.run(cx, cz);
+                }
+            }
+        });
+        if (error.get() != null) {
+            throw error.get();
         }
+        forEachChunk(parallel, minCX, minCZ, maxCX, maxCZ, write);
         
-        int affected = 0;
-        for (final Map.Entry<BlockVector, BaseBlock> entry : queue) {
-            final BlockVector position = entry.getKey();
-            final BaseBlock material = entry.getValue();
-            
-            // set at new position
-            if (setBlock(position, material)) {
-                ++affected;
+        return affected.get();
+    }
+    
+    /**
+     * Get the position a deformed block is copied from (as WorldEditExpressionEnvironment#toWorld, without allocating)
+     *
+     * @param source set to the source x, y and z
+     * @throws ExpressionException
+     */
+    private static void getDeformSource(final ExpressionPool.Instance instance, final Vector zero, final Vector unit, final int x, final int y, final int z, final int[] source) throws ExpressionException {
+        // offset, scale
+        instance.expression.evaluate((x - zero.getX()) / unit.getX(), (y - zero.getY()) / unit.getY(), (z - zero.getZ()) / unit.getZ());
+        // unscale, unoffset, round-nearest
+        source[0] = (int) Math.floor((instance.outputs[0].getValue() * unit.getX()) + zero.getX() + 0.5);
+        source[1] = (int) Math.floor((instance.outputs[1].getValue() * unit.getY()) + zero.getY() + 0.5);
+        source[2] = (int) Math.floor((instance.outputs[2].getValue() * unit.getZ()) + zero.getZ() + 0.5);
+    }
+    
+    /**
+     * Read a block for deformRegion, from the edit's section copies if possible
+     *
+     * @return (id << 4) + data
+     */
+    private int getDeformBlock(final int x, final int y, final int z) {
+        final int combined = fused != null ? fused.getSnapshot(x, y, z) : -1;
+        if (combined != -1) {
+            return combined;
+        }
+        final Vector position = new Vector(x, y, z);
+        return (world.getBlockType(position) << 4) + world.getBlockData(position);
+    }
+    
+    /**
+     * Run a task for every chunk in the (inclusive) range, on the parallel pool if allowed
+     *
+     * @throws MaxChangedBlocksException thrown if too many blocks are changed
+     */
+    private static void forEachChunk(final boolean parallel, final int minCX, final int minCZ, final int maxCX, final int maxCZ, final ParallelUtil.ChunkTask task) throws MaxChangedBlocksException {
+        try {
+            if (parallel && ParallelUtil.isEnabled()) {
+                ParallelUtil.forEachChunk(minCX, minCZ, maxCX, maxCZ, task);
+                return;
             }
+            for (int cz = minCZ; cz <= maxCZ; cz++) {
+                for (int cx = minCX; cx <= maxCX; cx++) {
+                    task.run(cx, cz);
+                }
+            }
+        } catch (final MaxChangedBlocksException e) {
+            throw e;
+        } catch (final WorldEditException e) {
+            throw new RuntimeException("Unexpected exception", e);
         }
-        
-        return affected;
     }
     
     /**
@@ -2259,8 +2908,6 @@ public class EditSession implements Extent {
     public int hollowOutRegion(final Region region, final int thickness, final Pattern pattern) throws MaxChangedBlocksException {
         int affected = 0;
         
-        final Set<BlockVector> outside = new HashSet<BlockVector>();
-        
         final Vector min = region.getMinimumPoint();
         final Vector max = region.getMaximumPoint();
         
@@ -2271,52 +2918,98 @@ public class EditSession implements Extent {
         final int maxY = max.getBlockY();
         final int maxZ = max.getBlockZ();
         
-        for (int x = minX; x <= maxX; ++x) {
-            for (int y = minY; y <= maxY; ++y) {
-                recurseHollow(region, new BlockVector(x, y, minZ), outside);
-                recurseHollow(region, new BlockVector(x, y, maxZ), outside);
+        // Bitsets over the bounding box with a 1 block border, so the neighbours of the region are always inside it
+        final int width = (maxX - minX) + 3;
+        final int height = (maxY - minY) + 3;
+        final int length = (maxZ - minZ) + 3;
+        final BoxBitSet inside = new BoxBitSet(width, height, length);
+        final BoxBitSet passable = getPassable(minX - 1, minY - 1, minZ - 1, width, height, length);
+        final boolean cuboid = region instanceof CuboidRegion;
+        for (int y = 1; y < (height - 1); y++) {
+            for (int z = 1; z < (length - 1); z++) {
+                for (int x = 1; x < (width - 1); x++) {
+                    if (cuboid || region.contains(new Vector((minX - 1) + x, (minY - 1) + y, (minZ - 1) + z))) {
+                        inside.set(inside.getIndex(x, y, z));
+                    }
+                }
             }
         }
         
-        for (int y = minY; y <= maxY; ++y) {
-            for (int z = minZ; z <= maxZ; ++z) {
-                recurseHollow(region, new BlockVector(minX, y, z), outside);
-                recurseHollow(region, new BlockVector(maxX, y, z), outside);
+        // Flood fill passable blocks from the faces of the bounding box
+        final BoxBitSet outside = new BoxBitSet(width, height, length);
+        int[] stack = new int[1024];
+        int size = 0;
+        for (int y = 1; y < (height - 1); y++) {
+            for (int z = 1; z < (length - 1); z++) {
+                for (int x = 1; x < (width - 1); x++) {
+                    if ((x == 1) || (x == (width - 2)) || (y == 1) || (y == (height - 2)) || (z == 1) || (z == (length - 2))) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size << 1);
+                        }
+                        stack[size++] = outside.getIndex(x, y, z);
+                    }
+                }
             }
         }
-        
-        for (int z = minZ; z <= maxZ; ++z) {
-            for (int x = minX; x <= maxX; ++x) {
-                recurseHollow(region, new BlockVector(x, minY, z), outside);
-                recurseHollow(region, new BlockVector(x, maxY, z), outside);
+        final int[] offsets = { width, -width, width * length, -width * length };
+        while (size > 0) {
+            final int index = stack[--size];
+            if (outside.get(index) || !passable.get(index)) {
+                continue;
             }
-        }
-        
-        for (int i = 1; i < thickness; ++i) {
-            final Set<BlockVector> newOutside = new HashSet<BlockVector>();
-            outer: for (final BlockVector position : region) {
-                for (final Vector recurseDirection : recurseDirections) {
-                    final BlockVector neighbor = position.add(recurseDirection).toBlockVector();
-                    
-                    if (outside.contains(neighbor)) {
-                        newOutside.add(position);
-                        continue outer;
+            outside.set(index);
+            // Blocks outside the region are part of the outside, but aren't expanded
+            if (!inside.get(index)) {
+                continue;
+            }
+            int left = index;
+            while (!outside.get(left - 1) && passable.get(left - 1)) {
+                outside.set(--left);
+                if (!inside.get(left)) {
+                    left++;
+                    break;
+                }
+            }
+            int right = index;
+            while (!outside.get(right + 1) && passable.get(right + 1)) {
+                outside.set(++right);
+                if (!inside.get(right)) {
+                    right--;
+                    break;
+                }
+            }
+            // Queue the start of each run of unvisited blocks in the rows above, below and to each side
+            for (final int offset : offsets) {
+                boolean run = false;
+                for (int i = left; i <= right; i++) {
+                    final int neighbour = i + offset;
+                    if (outside.get(neighbour) || !passable.get(neighbour)) {
+                        run = false;
+                        continue;
                     }
+                    if (!run) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size << 1);
+                        }
+                        stack[size++] = neighbour;
+                    }
+                    run = inside.get(neighbour);
                 }
             }
-            
-            outside.addAll(newOutside);
         }
         
-        outer: for (final BlockVector position : region) {
-            for (final Vector recurseDirection : recurseDirections) {
-                final BlockVector neighbor = position.add(recurseDirection).toBlockVector();
-                
-                if (outside.contains(neighbor)) {
-                    continue outer;
-                }
-            }
-            
+        final BoxBitSet neighbours = new BoxBitSet(width, height, length);
+        for (int i = 1; i < thickness; ++i) {
+            neighbours.setNeighbours(outside);
+            neighbours.and(inside);
+            outside.or(neighbours);
+        }
+        
+        // Fill every block of the region which doesn't touch the outside
+        neighbours.setNeighbours(outside);
+        inside.andNot(neighbours);
+        for (int index = inside.nextSetBit(0); index != -1; index = inside.nextSetBit(index + 1)) {
+            final BlockVector position = new BlockVector((minX - 1) + inside.getX(index), (minY - 1) + inside.getY(index), (minZ - 1) + inside.getZ(index));
             if (setBlock(position, pattern.next(position))) {
                 ++affected;
             }
@@ -2325,6 +3018,58 @@ public class EditSession implements Extent {
         return affected;
     }
     
+    /**
+     * Get which blocks in a box can be passed through.
+     *
+     * @return a bitset of the box
+     */
+    private BoxBitSet getPassable(final int minX, final int minY, final int minZ, final int width, final int height, final int length) {
+        final BoxBitSet passable = new BoxBitSet(width, height, length);
+        final boolean[] canPass = new boolean[65536];
+        for (int i = 0; i < canPass.length; i++) {
+            canPass[i] = BlockType.canPassThrough(i >> 4, i & 15);
+        }
+        final FaweQueue queue = SetQueue.IMP.queue;
+        final String worldName = world.getName();
+        final int maxX = (minX + width) - 1;
+        final int maxY = (minY + height) - 1;
+        final int maxZ = (minZ + length) - 1;
+        for (int cz = minZ >> 4; cz <= (maxZ >> 4); cz++) {
+            for (int cx = minX >> 4; cx <= (maxX >> 4); cx++) {
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                final int sections = queue.getSectionMask(worldName, cx, cz);
+                char[] ids = null;
+                for (int y = minY; y <= maxY; y++) {
+                    // Blocks outside the world and in empty sections are air
+                    final boolean empty = (y < 0) || (y > 255) || (((sections >> (y >> 4)) & 1) == 0);
+                    if (!empty && ((ids == null) || ((y & 15) == 0))) {
+                        ids = queue.getCachedSection(worldName, cx, y >> 4, cz);
+                    }
+                    for (int z = bz; z <= tz; z++) {
+                        for (int x = bx; x <= tx; x++) {
+                            final boolean pass;
+                            if (empty) {
+                                pass = true;
+                            } else if (ids != null) {
+                                pass = canPass[ids[FaweCache.CACHE_J[y][x & 15][z & 15]]];
+                            } else {
+                                final Vector position = new Vector(x, y, z);
+                                pass = BlockType.canPassThrough(getBlockType(position), getBlockData(position));
+                            }
+                            if (pass) {
+                                passable.set(passable.getIndex(x - minX, y - minY, z - minZ));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return passable;
+    }
+    
     /**
      * Draws a line (out of blocks) between two vectors.
      *
@@ -2484,30 +3229,6 @@ public class EditSession implements Extent {
         return returnset;
     }
     
-    private void recurseHollow(final Region region, final BlockVector origin, final Set<BlockVector> outside) {
-        final LinkedList<BlockVector> queue = new LinkedList<BlockVector>();
-        queue.addLast(origin);
-        
-        while (!queue.isEmpty()) {
-            final BlockVector current = queue.removeFirst();
-            if (!BlockType.canPassThrough(getBlockType(current), getBlockData(current))) {
-                continue;
-            }
-            
-            if (!outside.add(current)) {
-                continue;
-            }
-            
-            if (!region.contains(current)) {
-                continue;
-            }
-            
-            for (final Vector recurseDirection : recurseDirections) {
-                queue.addLast(current.add(recurseDirection).toBlockVector());
-            }
-        } // while
-    }
-    
     public int makeBiomeShape(final Region region, final Vector zero, final Vector unit, final BaseBiome biomeType, final String expressionString, final boolean hollow) throws ExpressionException,
     MaxChangedBlocksException {
         final Vector2D zero2D = zero.toVector2D();
@@ -2543,14 +3264,6 @@ public class EditSession implements Extent {
         return shape.generate(this, biomeType, hollow);
     }
     
-    private final Vector[] recurseDirections = {
-    PlayerDirection.NORTH.vector(),
-    PlayerDirection.EAST.vector(),
-    PlayerDirection.SOUTH.vector(),
-    PlayerDirection.WEST.vector(),
-    PlayerDirection.UP.vector(),
-    PlayerDirection.DOWN.vector(), };
-    
     private double lengthSq(final double x, final double y, final double z) {
         return (x * x) + (y * y) + (z * z);
     }
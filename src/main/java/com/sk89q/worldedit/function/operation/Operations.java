@@ -19,6 +19,7 @@
 
 package com.sk89q.worldedit.function.operation;
 
+import com.boydti.fawe.util.EditExecutor;
 import com.boydti.fawe.util.SetQueue;
 import com.boydti.fawe.util.TaskManager;
 import com.sk89q.worldedit.MaxChangedBlocksException;
@@ -78,6 +79,18 @@ public final class Operations {
     }
     
     public static void completeSmart(final Operation op, final Runnable whenDone, final boolean threadsafe) {
+        completeSmart(op, whenDone, threadsafe, EditExecutor.getOwner());
+    }
+    
+    /**
+     * Complete an operation on the edit threads (or on this thread if it isn't thread safe)
+     *
+     * @param op operation to execute
+     * @param whenDone task to run on the main thread once the operation completes, or null
+     * @param threadsafe whether the operation can be completed asynchronously
+     * @param owner the player name the edit is queued for, or null for the console
+     */
+    public static void completeSmart(final Operation op, final Runnable whenDone, final boolean threadsafe, final String owner) {
         if (!threadsafe) {
             completeBlindly(op);
             if (whenDone != null) {
@@ -88,7 +101,7 @@ public final class Operations {
         SetQueue.IMP.addTask(new Runnable() {
             @Override
             public void run() {
-                TaskManager.IMP.async(new Runnable() {
+                EditExecutor.submit(owner, new Runnable() {
                     @Override
                     public void run() {
                         Operation operation = op;
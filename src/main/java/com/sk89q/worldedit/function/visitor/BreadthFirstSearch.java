@@ -21,14 +21,16 @@ package com.sk89q.worldedit.function.visitor;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import com.boydti.fawe.object.ConcurrentSectionBitSet;
+import com.boydti.fawe.object.LongQueue;
+import com.boydti.fawe.object.SectionBitSet;
+import com.boydti.fawe.util.ParallelUtil;
 import com.sk89q.worldedit.BlockVector;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
@@ -51,10 +53,12 @@ import com.sk89q.worldedit.function.operation.RunContext;
 public abstract class BreadthFirstSearch implements Operation {
     
     private final RegionFunction function;
-    private final Queue<BlockVector> queue = new ArrayDeque<BlockVector>();
-    private final Set<BlockVector> visited = new HashSet<BlockVector>();
+    private final LongQueue queue = new LongQueue();
+    private final SectionBitSet visited = new SectionBitSet();
     private final List<Vector> directions = new ArrayList<Vector>();
     private int affected = 0;
+    private boolean parallel;
+    private volatile boolean cancelled;
     
     /**
      * Create a new instance.
@@ -67,6 +71,16 @@ public abstract class BreadthFirstSearch implements Operation {
         addAxes();
     }
     
+    /**
+     * Expand the search one level at a time on multiple threads.<br>
+     * Only use this if the function, isVisitable (e.g. the mask) and the extent are thread safe.
+     *
+     * @param parallel
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+    
     /**
      * Get the list of directions will be visited.
      *
@@ -120,26 +134,11 @@ public abstract class BreadthFirstSearch implements Operation {
      * @param position the position
      */
     public void visit(final Vector position) {
-        final BlockVector blockVector = position.toBlockVector();
-        if (!visited.contains(blockVector)) {
-            queue.add(blockVector);
-            visited.add(blockVector);
-        }
-    }
-    
-    /**
-     * Try to visit the given 'to' location.
-     *
-     * @param from the origin block
-     * @param to the block under question
-     */
-    private void visit(final Vector from, final Vector to) {
-        final BlockVector blockVector = to.toBlockVector();
-        if (!visited.contains(blockVector)) {
-            visited.add(blockVector);
-            if (isVisitable(from, to)) {
-                queue.add(blockVector);
-            }
+        final int x = position.getBlockX();
+        final int y = position.getBlockY();
+        final int z = position.getBlockZ();
+        if (visited.add(x, y, z)) {
+            queue.add(LongQueue.pack(x, y, z));
         }
     }
     
@@ -164,21 +163,123 @@ public abstract class BreadthFirstSearch implements Operation {
     
     @Override
     public Operation resume(final RunContext run) throws WorldEditException {
-        Vector position;
-        while ((position = queue.poll()) != null) {
+        // The directions may have been changed by a subclass since construction
+        final int size = directions.size();
+        final int[] dx = new int[size];
+        final int[] dy = new int[size];
+        final int[] dz = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Vector dir = directions.get(i);
+            dx[i] = dir.getBlockX();
+            dy[i] = dir.getBlockY();
+            dz[i] = dir.getBlockZ();
+        }
+        if (parallel && ParallelUtil.isEnabled()) {
+            parallel = false;
+            resumeParallel(dx, dy, dz);
+            return null;
+        }
+        while (!queue.isEmpty() && !cancelled) {
+            final long pair = queue.poll();
+            final int x = LongQueue.unpackX(pair);
+            final int y = LongQueue.unpackY(pair);
+            final int z = LongQueue.unpackZ(pair);
+            final BlockVector position = new BlockVector(x, y, z);
             if (function.apply(position)) {
                 affected++;
             }
             
-            for (final Vector dir : directions) {
-                visit(position, position.add(dir));
+            for (int i = 0; i < size; i++) {
+                final int tx = x + dx[i];
+                final int ty = y + dy[i];
+                final int tz = z + dz[i];
+                // Only create a vector for positions which haven't been visited
+                if (visited.add(tx, ty, tz) && isVisitable(position, new BlockVector(tx, ty, tz))) {
+                    queue.add(LongQueue.pack(tx, ty, tz));
+                }
             }
         }
         return null;
     }
     
+    /**
+     * Level synchronous search: each level's positions are grouped by chunk, and each chunk is expanded by a single thread
+     */
+    private void resumeParallel(final int[] dx, final int[] dy, final int[] dz) throws WorldEditException {
+        // Nothing has been processed yet, so the visited positions are exactly those queued
+        final ConcurrentSectionBitSet concurrentVisited = new ConcurrentSectionBitSet();
+        LongQueue frontier = new LongQueue(queue.size());
+        while (!queue.isEmpty()) {
+            final long pair = queue.poll();
+            concurrentVisited.add(LongQueue.unpackX(pair), LongQueue.unpackY(pair), LongQueue.unpackZ(pair));
+            frontier.add(pair);
+        }
+        final int size = dx.length;
+        while (!frontier.isEmpty() && !cancelled) {
+            final HashMap<Long, LongQueue> buckets = new HashMap<Long, LongQueue>();
+            while (!frontier.isEmpty()) {
+                final long pair = frontier.poll();
+                final long chunk = ((long) (LongQueue.unpackX(pair) >> 4) << 32) | ((LongQueue.unpackZ(pair) >> 4) & 0xFFFFFFFFL);
+                LongQueue bucket = buckets.get(chunk);
+                if (bucket == null) {
+                    bucket = new LongQueue();
+                    buckets.put(chunk, bucket);
+                }
+                bucket.add(pair);
+            }
+            final LongQueue[] current = buckets.values().toArray(new LongQueue[buckets.size()]);
+            final LongQueue[] next = new LongQueue[current.length];
+            final int[] counts = new int[current.length];
+            ParallelUtil.forEach(current.length, new ParallelUtil.IndexTask() {
+                @Override
+                public void run(final int index) throws WorldEditException {
+                    final LongQueue bucket = current[index];
+                    final LongQueue found = next[index] = new LongQueue();
+                    long lastKey = Long.MIN_VALUE;
+                    AtomicLongArray lastTile = null;
+                    int count = 0;
+                    while (!bucket.isEmpty() && !cancelled) {
+                        final long pair = bucket.poll();
+                        final int x = LongQueue.unpackX(pair);
+                        final int y = LongQueue.unpackY(pair);
+                        final int z = LongQueue.unpackZ(pair);
+                        final BlockVector position = new BlockVector(x, y, z);
+                        if (function.apply(position)) {
+                            count++;
+                        }
+                        for (int i = 0; i < size; i++) {
+                            final int tx = x + dx[i];
+                            final int ty = y + dy[i];
+                            final int tz = z + dz[i];
+                            final long key = SectionBitSet.getKey(tx, ty, tz);
+                            if ((key != lastKey) || (lastTile == null)) {
+                                lastKey = key;
+                                lastTile = concurrentVisited.getTile(key);
+                            }
+                            if (ConcurrentSectionBitSet.add(lastTile, tx, ty, tz) && isVisitable(position, new BlockVector(tx, ty, tz))) {
+                                found.add(LongQueue.pack(tx, ty, tz));
+                            }
+                        }
+                    }
+                    counts[index] = count;
+                }
+            });
+            for (int i = 0; i < current.length; i++) {
+                affected += counts[i];
+                final LongQueue found = next[i];
+                if (found != null) {
+                    while (!found.isEmpty()) {
+                        frontier.add(found.poll());
+                    }
+                }
+            }
+        }
+    }
+    
     @Override
-    public void cancel() {}
+    public void cancel() {
+        cancelled = true;
+    }
     
     public static Class<?> inject() {
         return Operations.class;
@@ -22,6 +22,8 @@ package com.sk89q.worldedit.function.visitor;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.boydti.fawe.util.ParallelUtil;
+import com.boydti.fawe.util.SetQueue;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.Vector2D;
 import com.sk89q.worldedit.WorldEditException;
@@ -43,11 +45,25 @@ import com.sk89q.worldedit.regions.FlatRegion;
  */
 public class LayerVisitor implements Operation {
     
+    /**
+     * Creates a separate function for each tile visited in parallel
+     */
+    public interface FunctionFactory {
+        LayerFunction create();
+    }
+    
+    private final FlatRegion flatRegion;
     private final LayerFunction function;
     private Mask2D mask = Masks.alwaysTrue2D();
     private final int minY;
     private final int maxY;
     private final Iterable<Vector2D> iterator;
+    private FunctionFactory factory;
+    private volatile boolean cancelled;
+    private String world;
+    private int lastCX = Integer.MAX_VALUE;
+    private int lastCZ = Integer.MAX_VALUE;
+    private int lastTop;
     
     /**
      * Create a new visitor.
@@ -63,10 +79,48 @@ public class LayerVisitor implements Operation {
         checkNotNull(function);
         this.minY = minY;
         this.maxY = maxY;
+        this.flatRegion = flatRegion;
         this.function = function;
         iterator = flatRegion.asFlatRegion();
     }
     
+    /**
+     * Process the columns in chunk aligned tiles on multiple threads, each with its own function.<br>
+     * Only use this if the extent the functions write to is thread safe.
+     *
+     * @param factory creates the function for each tile, or null to visit serially
+     */
+    public void setParallel(final FunctionFactory factory) {
+        this.factory = factory;
+    }
+    
+    /**
+     * Start each column at the highest section which contains blocks, rather than maxY.<br>
+     * Only use this if the function never treats air as ground.
+     *
+     * @param world the world being visited
+     */
+    public void setSkipEmptySections(final String world) {
+        this.world = world;
+    }
+    
+    /**
+     * Get the highest y which may contain a block in a chunk
+     * @param cx
+     * @param cz
+     * @return
+     */
+    private int getTop(final int cx, final int cz) {
+        if (world == null) {
+            return maxY;
+        }
+        final int sections = SetQueue.IMP.queue.getSectionMask(world, cx, cz);
+        if (sections == 0) {
+            return -1;
+        }
+        return Math.min(maxY, ((31 - Integer.numberOfLeadingZeros(sections)) << 4) + 15);
+    }
+    
     /**
      * Get the mask that determines which columns within the flat region
      * will be visited.
@@ -90,39 +144,102 @@ public class LayerVisitor implements Operation {
     
     @Override
     public Operation resume(final RunContext run) throws WorldEditException {
+        if ((factory != null) && ParallelUtil.isEnabled()) {
+            resumeParallel();
+            return null;
+        }
         for (final Vector2D column : iterator) {
-            if (!mask.test(column)) {
-                continue;
+            final int cx = column.getBlockX() >> 4;
+            final int cz = column.getBlockZ() >> 4;
+            if ((cx != lastCX) || (cz != lastCZ)) {
+                lastCX = cx;
+                lastCZ = cz;
+                lastTop = getTop(cx, cz);
             }
-            
-            // Abort if we are underground
-            if (function.isGround(column.toVector(maxY + 1))) {
+            if (cancelled || !visit(column, lastTop, function)) {
                 return null;
             }
+        }
+        return null;
+    }
+    
+    /**
+     * Visit a single column
+     * @param column
+     * @param top the highest y to search from
+     * @param function the function to apply
+     * @return false if the column is underground (and the visitor should stop)
+     * @throws WorldEditException
+     */
+    private boolean visit(final Vector2D column, final int top, final LayerFunction function) throws WorldEditException {
+        if (!mask.test(column)) {
+            return true;
+        }
+        
+        // Abort if we are underground
+        if (function.isGround(column.toVector(maxY + 1))) {
+            return false;
+        }
+        
+        boolean found = false;
+        int groundY = 0;
+        for (int y = top; y >= minY; --y) {
+            final Vector test = column.toVector(y);
+            if (!found) {
+                if (function.isGround(test)) {
+                    found = true;
+                    groundY = y;
+                }
+            }
             
-            boolean found = false;
-            int groundY = 0;
-            for (int y = maxY; y >= minY; --y) {
-                final Vector test = column.toVector(y);
-                if (!found) {
-                    if (function.isGround(test)) {
-                        found = true;
-                        groundY = y;
-                    }
+            if (found) {
+                if (!function.apply(test, groundY - y)) {
+                    break;
                 }
-                
-                if (found) {
-                    if (!function.apply(test, groundY - y)) {
-                        break;
+            }
+        }
+        return true;
+    }
+    
+    private void resumeParallel() throws WorldEditException {
+        final Vector min = flatRegion.getMinimumPoint();
+        final Vector max = flatRegion.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxZ = max.getBlockZ();
+        final int regionY = min.getBlockY();
+        ParallelUtil.forEachChunk(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                final int top = getTop(cx, cz);
+                final LayerFunction tileFunction = factory.create();
+                for (int z = bz; z <= tz; z++) {
+                    for (int x = bx; x <= tx; x++) {
+                        if (cancelled) {
+                            return;
+                        }
+                        if (!flatRegion.contains(new Vector(x, regionY, z))) {
+                            continue;
+                        }
+                        if (!visit(new Vector2D(x, z), top, tileFunction)) {
+                            cancelled = true;
+                            return;
+                        }
                     }
                 }
             }
-        }
-        return null;
+        });
     }
     
     @Override
-    public void cancel() {}
+    public void cancel() {
+        cancelled = true;
+    }
     
     public static Class<?> inject() {
         return Operations.class;
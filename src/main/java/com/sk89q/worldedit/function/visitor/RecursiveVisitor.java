@@ -21,6 +21,7 @@ package com.sk89q.worldedit.function.visitor;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.boydti.fawe.util.ParallelUtil;
 import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.function.RegionFunction;
 import com.sk89q.worldedit.function.mask.Mask;
@@ -29,6 +30,9 @@ import com.sk89q.worldedit.function.operation.Operations;
 /**
  * An implementation of an {@link BreadthFirstSearch} that uses a mask to
  * determine where a block should be visited.
+ *
+ * <p>The search is expanded in parallel if the mask and function are thread safe
+ * (see {@link ParallelUtil}).</p>
  */
 public class RecursiveVisitor extends BreadthFirstSearch {
     
@@ -44,6 +48,8 @@ public class RecursiveVisitor extends BreadthFirstSearch {
         super(function);
         checkNotNull(mask);
         this.mask = mask;
+        // e.g. a replace over an EditSession which can parallelize
+        setParallel(ParallelUtil.isThreadSafe(mask) && ParallelUtil.isThreadSafe(function));
     }
     
     @Override
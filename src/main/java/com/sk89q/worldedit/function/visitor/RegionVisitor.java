@@ -21,12 +21,16 @@ package com.sk89q.worldedit.function.visitor;
 
 import java.util.Iterator;
 
+import com.boydti.fawe.object.ChunkOrderedIterable;
+import com.boydti.fawe.util.ParallelUtil;
 import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.Vector;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.function.RegionFunction;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.function.operation.RunContext;
+import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.regions.Region;
 
 /**
@@ -34,15 +38,27 @@ import com.sk89q.worldedit.regions.Region;
  */
 public class RegionVisitor implements Operation {
     
+    private final Region region;
     private final RegionFunction function;
     private final int affected = 0;
     
-    private final Iterator<BlockVector> iterator;
+    private Iterator<BlockVector> iterator;
+    private boolean parallel;
+    private volatile boolean cancelled;
     
     public RegionVisitor(final Region region, final RegionFunction function) {
+        this.region = region;
         this.function = function;
-        iterator = region.iterator();
-        
+    }
+    
+    /**
+     * Process the region in chunk aligned tiles on multiple threads.<br>
+     * Only use this if the function (and the extent it writes to) is thread safe.
+     *
+     * @param parallel
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
     }
     
     /**
@@ -56,14 +72,59 @@ public class RegionVisitor implements Operation {
     
     @Override
     public Operation resume(final RunContext run) throws WorldEditException {
-        while (iterator.hasNext()) {
+        if (parallel && ParallelUtil.isEnabled()) {
+            parallel = false;
+            resumeParallel();
+            return null;
+        }
+        if (iterator == null) {
+            // Visit a chunk at a time so the queue and block caches are reused
+            iterator = new ChunkOrderedIterable(region).iterator();
+        }
+        while (iterator.hasNext() && !cancelled) {
             function.apply(iterator.next());
         }
         return null;
     }
     
+    private void resumeParallel() throws WorldEditException {
+        final Vector min = region.getMinimumPoint();
+        final Vector max = region.getMaximumPoint();
+        final int minX = min.getBlockX();
+        final int minY = min.getBlockY();
+        final int minZ = min.getBlockZ();
+        final int maxX = max.getBlockX();
+        final int maxY = max.getBlockY();
+        final int maxZ = max.getBlockZ();
+        final boolean cuboid = region instanceof CuboidRegion;
+        ParallelUtil.forEachChunk(minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4, new ParallelUtil.ChunkTask() {
+            @Override
+            public void run(final int cx, final int cz) throws WorldEditException {
+                if (cancelled) {
+                    return;
+                }
+                final int bx = Math.max(minX, cx << 4);
+                final int bz = Math.max(minZ, cz << 4);
+                final int tx = Math.min(maxX, (cx << 4) + 15);
+                final int tz = Math.min(maxZ, (cz << 4) + 15);
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = bz; z <= tz; z++) {
+                        for (int x = bx; x <= tx; x++) {
+                            final BlockVector pos = new BlockVector(x, y, z);
+                            if (cuboid || region.contains(pos)) {
+                                function.apply(pos);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+    
     @Override
-    public void cancel() {}
+    public void cancel() {
+        cancelled = true;
+    }
     
     public static Class<?> inject() {
         return Operations.class;